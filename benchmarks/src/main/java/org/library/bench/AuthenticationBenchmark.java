@@ -0,0 +1,47 @@
+package org.library.bench;
+
+import org.library.user.PasswordHasher;
+import org.library.user.User;
+import org.library.user.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Login round trip for a random seeded user: repeated logins served by the verification cache, the full
+// PBKDF2 check with the cache disabled, and a wrong password.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark extends SeededDatabase {
+    private final UserService users = new UserService();
+    private final UserService uncached = new UserService(new PasswordHasher(), 0, 0);
+
+    // A handful of desks logging in again and again, so nearly every attempt hits the cache.
+    @Benchmark
+    public User login() throws SQLException {
+        int user = ThreadLocalRandom.current().nextInt(16) + 1;
+        return users.authenticate("user" + user, PASSWORD);
+    }
+
+    @Benchmark
+    public User loginUncached() throws SQLException {
+        int user = ThreadLocalRandom.current().nextInt(USERS) + 1;
+        return uncached.authenticate("user" + user, PASSWORD);
+    }
+
+    @Benchmark
+    public User wrongPassword() throws SQLException {
+        int user = ThreadLocalRandom.current().nextInt(USERS) + 1;
+        return users.authenticate("user" + user, "wrong");
+    }
+}
@@ -0,0 +1,71 @@
+package org.library.bench;
+
+import org.library.book.Book;
+import org.library.book.BookTable;
+import org.library.book.StringDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Holding the catalogue in memory: the original List<Book> plus Object[][] table data against a columnar
+// BookTable. Run with -prof gc and compare gc.alloc.rate.norm for the bytes each representation allocates.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookTableBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    // Strings as the JDBC driver would hand them over; both representations keep references to them
+    private String[] titles;
+    private String[] authors;
+
+    @Setup(Level.Trial)
+    public void createStrings() {
+        titles = new String[rows];
+        authors = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            titles[i] = "Title " + (i + 1);
+            authors[i] = "Author " + (i + 1) % SeededDatabase.AUTHORS;
+        }
+    }
+
+    @Benchmark
+    public Object[][] objectRows() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            books.add(new Book(i + 1, titles[i], authors[i], i % 10 != 9));
+        }
+        Object[][] data = new Object[books.size()][];
+        for (int i = 0; i < data.length; i++) {
+            Book book = books.get(i);
+            data[i] = new Object[]{book.getId(), book.getTitle(), book.getAuthor(), book.isAvailable() ? "Yes" : "No"};
+        }
+        return data;
+    }
+
+    @Benchmark
+    public BookTable columnar() {
+        BookTable table = new BookTable(new StringDictionary(), 16);
+        for (int i = 0; i < rows; i++) {
+            table.add(i + 1, titles[i], authors[i], i % 10 != 9);
+        }
+        return table;
+    }
+}
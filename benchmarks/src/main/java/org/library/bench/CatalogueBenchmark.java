@@ -0,0 +1,87 @@
+package org.library.bench;
+
+import org.library.book.Book;
+import org.library.book.BookQuery;
+import org.library.book.BookRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Catalogue load: what the book tables ask the repository for when a window opens, scrolls or searches.
+// The uncached repository measures the database round trips, the cached one the shared-cache hit path.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogueBenchmark extends SeededDatabase {
+    private static final int PAGE_SIZE = 200;
+    private static final BookQuery PREFIX = new BookQuery("Author 42", BookQuery.Mode.PREFIX, BookQuery.Availability.ALL);
+    private static final BookQuery AVAILABLE = new BookQuery("", BookQuery.Mode.PREFIX, BookQuery.Availability.AVAILABLE);
+    private static final BookQuery BY_TITLE = BookQuery.ALL.sortedBy(BookQuery.Sort.TITLE, false);
+    private static final BookQuery BY_AUTHOR_DESCENDING = BookQuery.ALL.sortedBy(BookQuery.Sort.AUTHOR, true);
+
+    private BookRepository uncached;
+    private BookRepository cached;
+
+    @Setup(Level.Trial)
+    public void createRepositories() {
+        uncached = new BookRepository(0, 0, false);
+        cached = new BookRepository(10_000, Long.MAX_VALUE, false);
+    }
+
+    @Benchmark
+    public int count() throws SQLException {
+        return uncached.count(BookQuery.ALL);
+    }
+
+    @Benchmark
+    public List<Book> firstPage() throws SQLException {
+        return uncached.fetchPage(BookQuery.ALL, null, PAGE_SIZE);
+    }
+
+    // Jumping to the middle of the table with the scrollbar: offset lookup, then a keyset page.
+    @Benchmark
+    public List<Book> middlePage() throws SQLException {
+        Book after = uncached.bookAtOffset(BookQuery.ALL, rows / 2 - 1);
+        return uncached.fetchPage(BookQuery.ALL, after, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Book> prefixSearch() throws SQLException {
+        return uncached.fetchPage(PREFIX, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Book> availableFilter() throws SQLException {
+        return uncached.fetchPage(AVAILABLE, null, PAGE_SIZE);
+    }
+
+    // Clicking a column header: the first page in the new order, read from the column's index.
+    @Benchmark
+    public List<Book> sortedFirstPage() throws SQLException {
+        return uncached.fetchPage(BY_TITLE, null, PAGE_SIZE);
+    }
+
+    // Scrolling on in a sorted table: the keyset continues after the last row's sort value.
+    @Benchmark
+    public List<Book> sortedNextPage() throws SQLException {
+        List<Book> first = uncached.fetchPage(BY_AUTHOR_DESCENDING, null, PAGE_SIZE);
+        return uncached.fetchPage(BY_AUTHOR_DESCENDING, first.get(first.size() - 1), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Book> cachedFirstPage() throws SQLException {
+        return cached.fetchPage(BookQuery.ALL, null, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,71 @@
+package org.library.bench;
+
+import org.library.loan.CirculationQueue;
+import org.library.loan.CirculationResult;
+import org.library.loan.CirculationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// One borrow followed by the matching return of a random available book, i.e. two transactions, or two queued
+// events with writeBehind=true. Run with -t to measure contention between desks; write-behind only pays off
+// with several threads, since each caller still waits for its batch to commit.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CirculationBenchmark extends SeededDatabase {
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    private CirculationQueue queue;
+    private CirculationService circulation;
+
+    @Override
+    protected void seedMore(Connection conn) {
+        if (writeBehind) {
+            queue = new CirculationQueue(Integer.getInteger("library.circulation.lanes", 2),
+                    Integer.getInteger("library.circulation.batchSize", 64),
+                    Long.getLong("library.circulation.lingerMillis", 2));
+        }
+        circulation = new CirculationService(Clock.systemUTC(), Duration.ofDays(14), queue);
+    }
+
+    @TearDown
+    public void closeQueue() {
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    @Benchmark
+    public void borrowAndReturn(Blackhole blackhole) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(USERS) + 1;
+        // Books whose id is a multiple of ten start out borrowed, so skip them
+        int book = random.nextInt(rows) + 1;
+        if (book % 10 == 0) {
+            book--;
+        }
+        CirculationResult borrowed = circulation.borrow(user, book);
+        blackhole.consume(borrowed);
+        if (borrowed == CirculationResult.SUCCESS) {
+            blackhole.consume(circulation.returnBook(user, book));
+        }
+    }
+}
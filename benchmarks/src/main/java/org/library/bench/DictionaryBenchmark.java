@@ -0,0 +1,55 @@
+package org.library.bench;
+
+import org.library.book.BookDictionary;
+import org.library.book.BookRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Autocompletion lookups, which run on the EDT at every keystroke, and the startup scan that builds the
+// dictionary. Titles are all distinct ("Title N"); authors repeat ("Author 0".."Author 4999").
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryBenchmark extends SeededDatabase {
+    private static final int SUGGESTIONS = 8;
+
+    private BookDictionary dictionary;
+
+    @Override
+    protected void seedMore(Connection conn) throws SQLException {
+        dictionary = new BookRepository(0, 0, false).getDictionary();
+        dictionary.load();
+    }
+
+    // A title typed up to its third digit, e.g. "Title 123"
+    @Benchmark
+    public List<String> completeTitle() {
+        return dictionary.completeTitles("Title " + (ThreadLocalRandom.current().nextInt(900) + 100), SUGGESTIONS);
+    }
+
+    // What the search box asks for: authors, then titles
+    @Benchmark
+    public List<String> completeSearch() {
+        return dictionary.complete("Author " + ThreadLocalRandom.current().nextInt(10), SUGGESTIONS);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BookDictionary load() throws SQLException {
+        dictionary.load();
+        return dictionary;
+    }
+}
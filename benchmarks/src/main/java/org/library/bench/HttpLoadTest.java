@@ -0,0 +1,171 @@
+package org.library.bench;
+
+import org.library.book.BookChangeFeed;
+import org.library.book.BookRepository;
+import org.library.loan.CirculationService;
+import org.library.metrics.Histogram;
+import org.library.server.CatalogueServer;
+import org.library.user.UserService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closed-loop load test of the HTTP catalogue: each client thread sends its next request as soon as the previous one
+// returns, with a mix of browsing, searching and borrow/return. Runs against a server on localhost, or with
+// --embedded starts one in-process on a seeded in-memory database. Not a JMH benchmark; run it with
+//
+//   java -cp target/benchmarks.jar org.library.bench.HttpLoadTest --embedded 100000 --clients 64 --seconds 30
+//   java -cp target/benchmarks.jar org.library.bench.HttpLoadTest --url http://localhost:8080 --books 100000
+//
+// Against a running server --books tells the clients how many books to pick from, and the users user1..user1000
+// with password "secret" (as seeded by the benchmarks) must exist for the borrow/return share of the mix.
+public class HttpLoadTest {
+    private final String baseUrl;
+    private final int books;
+    private final Map<String, Histogram> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> failures = new LinkedHashMap<>();
+
+    HttpLoadTest(String baseUrl, int books) {
+        this.baseUrl = baseUrl;
+        this.books = books;
+        for (String operation : new String[]{"browse", "jump", "search", "count", "borrow", "return"}) {
+            latencies.put(operation, new Histogram());
+            failures.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        int clients = Integer.parseInt(options.getOrDefault("clients", "32"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "20"));
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int books = Integer.parseInt(options.getOrDefault("books", "100000"));
+
+        SeededDatabase database = null;
+        CatalogueServer server = null;
+        if (options.containsKey("embedded")) {
+            // As CatalogueServer.main does, before the first server starts
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+                System.setProperty("sun.net.httpserver.nodelay", "true");
+            }
+            database = new SeededDatabase() {
+            };
+            database.rows = Integer.parseInt(options.get("embedded"));
+            database.seed();
+            books = database.rows;
+            server = new CatalogueServer(new InetSocketAddress("127.0.0.1", 0), BookRepository.shared(),
+                    BookChangeFeed.shared(), new CirculationService(), new UserService());
+            server.start();
+            url = "http://127.0.0.1:" + server.getPort();
+        }
+        try {
+            HttpLoadTest test = new HttpLoadTest(url, books);
+            System.out.printf("%d clients for %d s against %s (%d books)%n", clients, seconds, url, books);
+            test.run(clients, 3, false);
+            long requests = test.run(clients, seconds, true);
+            test.report(requests, seconds);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+            if (database != null) {
+                database.close();
+            }
+        }
+    }
+
+    // Runs the clients for the given time and returns the number of requests sent; a warm-up is not recorded.
+    long run(int clients, int seconds, boolean record) throws InterruptedException {
+        LongAdder requests = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            threads[i] = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    nextRequest(record);
+                    requests.increment();
+                }
+            }, "load-client-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return requests.sum();
+    }
+
+    // 50% next page, 15% jump into the middle, 20% prefix search, 5% search count, 10% borrow followed by return.
+    private void nextRequest(boolean record) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int roll = random.nextInt(100);
+        if (roll < 50) {
+            call("browse", "GET", "/api/books?limit=50&after=" + random.nextInt(Math.max(1, books - 50)), null, record);
+        } else if (roll < 65) {
+            call("jump", "GET", "/api/books?limit=50&sort=title&after=" + (1 + random.nextInt(books)), null, record);
+        } else if (roll < 85) {
+            call("search", "GET", "/api/books?limit=50&q=Author+" + random.nextInt(5000), null, record);
+        } else if (roll < 90) {
+            call("count", "GET", "/api/books/count?q=Author+" + random.nextInt(5000), null, record);
+        } else {
+            String user = "user" + (1 + random.nextInt(SeededDatabase.USERS)) + ":" + SeededDatabase.PASSWORD;
+            int bookId = 1 + random.nextInt(books);
+            // The book may be out already; only a successful borrow is followed by its return
+            if (call("borrow", "POST", "/api/books/" + bookId + "/borrow", user, record) == 200) {
+                call("return", "POST", "/api/books/" + bookId + "/return", user, record);
+            }
+        }
+    }
+
+    // Sends the request and returns the status, or -1 if it failed. 409 (already borrowed) is a normal answer.
+    private int call(String operation, String method, String path, String credentials, boolean record) {
+        long start = System.nanoTime();
+        int status = -1;
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            conn.setRequestMethod(method);
+            if (credentials != null) {
+                conn.setRequestProperty("Authorization",
+                        "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+            }
+            status = conn.getResponseCode();
+            // Reading the body to the end lets the connection be kept alive
+            try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+                byte[] buffer = new byte[8192];
+                while (in != null && in.read(buffer) != -1) {
+                }
+            }
+        } catch (IOException e) {
+            status = -1;
+        }
+        if (record) {
+            latencies.get(operation).record(System.nanoTime() - start);
+            if (status != 200 && status != 409) {
+                failures.get(operation).increment();
+            }
+        }
+        return status;
+    }
+
+    void report(long requests, int seconds) {
+        System.out.printf("%n%d requests, %.0f requests/s%n%n", requests, requests / (double) seconds);
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %10s%n", "", "count", "failed", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, Histogram> entry : latencies.entrySet()) {
+            Histogram.Snapshot h = entry.getValue().snapshot();
+            System.out.printf("%-8s %10d %10d %10.2f %10.2f %10.2f %10.2f%n", entry.getKey(), h.getCount(),
+                    failures.get(entry.getKey()).sum(), h.getP50() / 1e6, h.getP95() / 1e6, h.getP99() / 1e6, h.getMax() / 1e6);
+        }
+    }
+}
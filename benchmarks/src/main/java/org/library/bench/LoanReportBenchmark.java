@@ -0,0 +1,65 @@
+package org.library.bench;
+
+import org.library.loan.CirculationService;
+import org.library.loan.Loan;
+import org.library.loan.OverdueSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The loan reports against a long history: every book has been borrowed and returned `history` times
+// on top of the open loans from SeededDatabase, e.g. 10 million closed loans at rows=1000000.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanReportBenchmark extends SeededDatabase {
+    @Param({"10"})
+    public int history;
+
+    private final CirculationService circulation = new CirculationService();
+
+    @Override
+    protected void seedMore(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO loans (user_id, book_id, borrowed_at, due_at, returned_at) "
+                     + "SELECT MOD(X, " + USERS + ") + 1, MOD(X, ?) + 1, DATEADD('DAY', -400, CURRENT_TIMESTAMP), "
+                     + "DATEADD('DAY', -386, CURRENT_TIMESTAMP), DATEADD('DAY', -390, CURRENT_TIMESTAMP) FROM SYSTEM_RANGE(1, ?)")) {
+            stmt.setInt(1, rows);
+            stmt.setLong(2, (long) rows * history);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    public List<OverdueSummary> overdueByUser() throws SQLException {
+        return circulation.overdueByUser(500);
+    }
+
+    @Benchmark
+    public List<Loan> overdueLoans() throws SQLException {
+        return circulation.overdue(500);
+    }
+
+    @Benchmark
+    public List<Loan> userHistoryPage() throws SQLException {
+        return circulation.history(ThreadLocalRandom.current().nextInt(USERS) + 1, Long.MAX_VALUE, 50);
+    }
+
+    @Benchmark
+    public List<Loan> currentLoans() throws SQLException {
+        return circulation.currentLoans(ThreadLocalRandom.current().nextInt(USERS) + 1);
+    }
+}
@@ -0,0 +1,78 @@
+package org.library.bench;
+
+import org.library.database.ConnectionPool;
+import org.library.database.DatabaseManager;
+import org.library.database.EmbeddedStorage;
+import org.library.database.MigrationRunner;
+import org.library.database.PoolConfig;
+import org.library.user.PasswordHasher;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Base state for all benchmarks: an in-memory H2 database in MySQL mode with the application schema,
+// seeded with the given number of books before each trial and installed as the application's pool.
+@State(Scope.Benchmark)
+public abstract class SeededDatabase {
+    public static final int USERS = 1000;
+    public static final int AUTHORS = 5000;
+    public static final String PASSWORD = "secret";
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        String url = "jdbc:h2:mem:bench-" + rows + ";MODE=MySQL;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1";
+        // -Dlibrary.pool.statementCacheSize=0 measures the cost of preparing every statement
+        PoolConfig config = PoolConfig.fromSystemProperties();
+        config.setMaxSize(Integer.getInteger("library.pool.maxSize", 16));
+        DatabaseManager.setPool(new ConnectionPool(() -> DriverManager.getConnection(url), config));
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+            // The embedded backend's schema, i.e. db/mysql minus the FULLTEXT index
+            new MigrationRunner(new EmbeddedStorage().getMigrationLocation()).migrate(conn);
+        }
+        try (Connection conn = DatabaseManager.getConnection()) {
+            // Every tenth book is out on loan
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO books (title, author, available) "
+                    + "SELECT CONCAT('Title ', X), CONCAT('Author ', MOD(X, " + AUTHORS + ")), MOD(X, 10) <> 0 FROM SYSTEM_RANGE(1, ?)")) {
+                stmt.setInt(1, rows);
+                stmt.executeUpdate();
+            }
+            try (Statement stmt = conn.createStatement()) {
+                // Borrowed between 0 and 29 days ago for two weeks, so about half of the open loans are overdue
+                stmt.executeUpdate("INSERT INTO loans (user_id, book_id, borrowed_at, due_at) "
+                        + "SELECT MOD(id, " + USERS + ") + 1, id, DATEADD('DAY', -MOD(id, 30), CURRENT_TIMESTAMP), "
+                        + "DATEADD('DAY', 14 - MOD(id, 30), CURRENT_TIMESTAMP) FROM books WHERE available = false");
+            }
+            // One hash shared by all users; hashing each password separately would dominate the setup
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO users (username, password, role) "
+                    + "SELECT CONCAT('user', X), ?, 'USER' FROM SYSTEM_RANGE(1, ?)")) {
+                stmt.setString(1, new PasswordHasher().hash(PASSWORD));
+                stmt.setInt(2, USERS);
+                stmt.executeUpdate();
+            }
+            seedMore(conn);
+        }
+    }
+
+    // Extra data for a subclass. JMH does not order @Setup methods across the class hierarchy, so
+    // subclasses hook in here instead of declaring their own trial setup.
+    protected void seedMore(Connection conn) throws SQLException {
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        DatabaseManager.shutdown();
+    }
+}
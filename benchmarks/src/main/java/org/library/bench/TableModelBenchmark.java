@@ -0,0 +1,50 @@
+package org.library.bench;
+
+import org.library.book.BookRepository;
+import org.library.gui.BookTableModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Table build: time from creating a BookTableModel to the point where the row count is known and the
+// first screen of rows can be painted, including the hops between the database threads and the EDT.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TableModelBenchmark extends SeededDatabase {
+    private BookRepository repository;
+
+    @Setup(Level.Trial)
+    public void createRepository() {
+        repository = new BookRepository(0, 0, false);
+    }
+
+    @Benchmark
+    public BookTableModel buildTable() throws Exception {
+        CountDownLatch loaded = new CountDownLatch(1);
+        BookTableModel[] model = new BookTableModel[1];
+        SwingUtilities.invokeAndWait(() -> {
+            model[0] = new BookTableModel(repository);
+            model[0].addTableModelListener(e -> {
+                if (model[0].getRowCount() == rows && model[0].getBookAt(0) != null) {
+                    loaded.countDown();
+                }
+            });
+            model[0].reload();
+        });
+        loaded.await();
+        return model[0];
+    }
+}
@@ -1,13 +1,17 @@
 package org.library;
 
 import org.library.gui.LoginPage;
+import org.library.server.CatalogueServer;
 
-import javax.swing.*;
+import java.util.Arrays;
 
 public class Main {
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            new LoginPage().setVisible(true);
-        });
+    // Starts the desktop client, or with --server the headless HTTP catalogue.
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--server")) {
+            CatalogueServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        LoginPage.main(args);
     }
 }
@@ -0,0 +1,173 @@
+package org.library;
+
+import org.library.database.PoolConfig;
+import org.library.metrics.Metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs data-access work for the windows and the HTTP server. Every task gets its own virtual thread where the JVM
+// has them (a pool of platform threads otherwise), but only as many tasks as there are permits run at once; the
+// default is the connection pool's maximum size, so work waits here, where it can time out and be counted, instead
+// of inside the pool. Tasks must not block on other tasks of the same executor while they hold a permit.
+//
+// A task that has not finished within its timeout completes with a TimeoutException: if it is still queued it never
+// starts, and if it is running its thread is interrupted. Cancelling the returned future behaves the same way.
+public class RequestExecutor {
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "library-task-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static RequestExecutor shared;
+
+    private final String name;
+    private final ExecutorService threads;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final long defaultTimeoutMillis;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    // Metrics are named after the executor: <name>.wait and <name>.task latencies, <name>.queued and <name>.active
+    // gauges, and errors.<name> and errors.<name>.timeout counters. A timeout of 0 means none.
+    public RequestExecutor(String name, int maxConcurrency, long defaultTimeoutMillis) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.threads = newThreadPerTaskExecutor("library-" + name,
+                Math.max(maxConcurrency, Integer.getInteger("library.executor.threads", 64)));
+        Metrics.gauge(name + ".queued", this::getQueued);
+        Metrics.gauge(name + ".active", this::getActive);
+    }
+
+    // Sized by library.executor.permits (the pool's library.pool.maxSize by default), with tasks timing out after
+    // library.executor.timeoutMillis (30 s).
+    public static synchronized RequestExecutor shared() {
+        if (shared == null) {
+            shared = new RequestExecutor("executor",
+                    Integer.getInteger("library.executor.permits", PoolConfig.fromSystemProperties().getMaxSize()),
+                    Long.getLong("library.executor.timeoutMillis", 30_000));
+        }
+        return shared;
+    }
+
+    // A virtual thread per task where available. Looked up reflectively so the jar still builds for and runs on
+    // older JDKs, which get up to fallbackThreads platform threads instead.
+    public static ExecutorService newThreadPerTaskExecutor(String threadName, int fallbackThreads) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadName + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) executor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(fallbackThreads, fallbackThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, threadName + "-" + THREAD_IDS.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return submit(task, defaultTimeoutMillis);
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> task, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+        // Set once the task stops counting as queued: when it gets a permit, or when its future completes first,
+        // since a task cancelled or timed out before its thread started never runs at all
+        AtomicBoolean dequeued = new AtomicBoolean();
+        queued.incrementAndGet();
+        Future<?> running = threads.submit(() -> run(task, result, submitted, dequeued));
+        if (timeoutMillis > 0) {
+            ScheduledFuture<?> timeout = TIMER.schedule(() -> {
+                if (result.completeExceptionally(new TimeoutException(name + " task did not finish within " + timeoutMillis + " ms"))) {
+                    Metrics.increment("errors." + name + ".timeout");
+                    running.cancel(true);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((value, error) -> timeout.cancel(false));
+        }
+        result.whenComplete((value, error) -> {
+            dequeue(dequeued);
+            if (result.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private <T> void run(Callable<T> task, CompletableFuture<T> result, long submitted, AtomicBoolean dequeued) {
+        boolean acquired = false;
+        try {
+            if (result.isDone()) {
+                return;
+            }
+            permits.acquire();
+            acquired = true;
+            dequeue(dequeued);
+            // Time spent waiting for a permit, and running
+            long started = System.nanoTime();
+            Metrics.record(name + ".wait", started - submitted);
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(task.call());
+            } catch (Throwable t) {
+                Metrics.increment("errors." + name);
+                result.completeExceptionally(t);
+            } finally {
+                Metrics.record(name + ".task", System.nanoTime() - started);
+            }
+        } catch (InterruptedException e) {
+            // Timed out or cancelled while waiting for a permit; the future is already complete
+        } finally {
+            dequeue(dequeued);
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    private void dequeue(AtomicBoolean dequeued) {
+        if (dequeued.compareAndSet(false, true)) {
+            queued.decrementAndGet();
+        }
+    }
+
+    // Tasks submitted but not yet holding a permit.
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getActive() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+}
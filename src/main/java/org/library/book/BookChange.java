@@ -0,0 +1,60 @@
+package org.library.book;
+
+// One entry of the change feed: the current state of a book that changed after a given version.
+public class BookChange {
+    public enum Type {
+        INSERT("I"), UPDATE("U"), DELETE("D");
+
+        private final String code;
+
+        Type(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public static Type fromCode(String code) {
+            for (Type type : values()) {
+                if (type.code.equals(code)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown change type: " + code);
+        }
+    }
+
+    private final long version;
+    private final int bookId;
+    private final Type type;
+    private final Book book;
+
+    public BookChange(long version, int bookId, Type type, Book book) {
+        this.version = version;
+        this.bookId = bookId;
+        this.type = type;
+        this.book = book;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // The row as it is now, or null if it no longer exists.
+    public Book getBook() {
+        return book;
+    }
+
+    public boolean isDeleted() {
+        return book == null;
+    }
+}
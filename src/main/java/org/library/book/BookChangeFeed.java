@@ -0,0 +1,206 @@
+package org.library.book;
+
+import org.library.database.DatabaseManager;
+import org.library.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Follows the book_changes log and tells listeners which books changed since the last version it saw, so open
+// windows update only those rows. Writes made in this process call pollNow() and show up right away; changes
+// from other clients are picked up by a cheap primary-key range scan every library.changes.pollMillis.
+//
+// Versions are handed out when a change is logged, not when its transaction commits, so a slow transaction can
+// commit a lower version after a higher one has been read. Versions skipped by a poll are therefore looked up
+// again on later polls until they show up or library.changes.gapMillis has passed; gaps also come from rolled
+// back transactions, whose versions never appear.
+public class BookChangeFeed implements AutoCloseable {
+    private static final BookChangeFeed SHARED = new BookChangeFeed(BookRepository.shared(),
+            Long.getLong("library.changes.pollMillis", 2000),
+            Long.getLong("library.changes.retentionMillis", 24 * 60 * 60 * 1000L),
+            Long.getLong("library.changes.gapMillis", 60_000));
+    private static final int BATCH_SIZE = 1000;
+    // Skipped versions to look for again; a larger gap only keeps its newest versions
+    private static final int MAX_MISSING = 10_000;
+    private static final long PRUNE_INTERVAL_MILLIS = 60 * 60 * 1000L;
+
+    @FunctionalInterface
+    public interface Listener {
+        // Called on the feed's thread, once per poll that found changes, with one entry per book.
+        void booksChanged(List<BookChange> changes);
+    }
+
+    private final BookRepository repository;
+    private final BookDao dao = new BookDao(false);
+    private final long pollMillis;
+    private final long retentionMillis;
+    private final long gapMillis;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService poller;
+    private boolean started;
+    // Last version handed to listeners; -1 until the first poll fixes the starting point
+    private long version = -1;
+    private long lastPruned = System.currentTimeMillis();
+    // Skipped versions and when they were first missed, oldest first
+    private final LinkedHashMap<Long, Long> missing = new LinkedHashMap<>();
+
+    public BookChangeFeed(BookRepository repository, long pollMillis, long retentionMillis) {
+        this(repository, pollMillis, retentionMillis, 60_000);
+    }
+
+    public BookChangeFeed(BookRepository repository, long pollMillis, long retentionMillis, long gapMillis) {
+        this.repository = repository;
+        this.pollMillis = pollMillis;
+        this.retentionMillis = retentionMillis;
+        this.gapMillis = gapMillis;
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "library-changes");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static BookChangeFeed shared() {
+        return SHARED;
+    }
+
+    // Polling starts with the first listener.
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+        if (!started && pollMillis > 0) {
+            started = true;
+            poller.scheduleWithFixedDelay(this::pollQuietly, 0, pollMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Polls on the feed's thread without waiting for the next interval, e.g. right after a local write.
+    public void pollNow() {
+        poller.execute(this::pollQuietly);
+    }
+
+    // Reads the changes since the last poll, applies them to the repository cache and notifies the listeners.
+    // The first poll only records the current version. Returns the number of changed books.
+    public synchronized int poll() throws SQLException {
+        if (version < 0) {
+            try (Connection conn = DatabaseManager.getConnection()) {
+                version = dao.latestChangeVersion(conn);
+            }
+            return 0;
+        }
+        int changed = recheckMissing();
+        List<BookChange> batch;
+        do {
+            try (Connection conn = DatabaseManager.getConnection()) {
+                batch = dao.changesSince(conn, version, BATCH_SIZE);
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            long now = System.currentTimeMillis();
+            for (BookChange change : batch) {
+                for (long skipped = Math.max(version + 1, change.getVersion() - MAX_MISSING); skipped < change.getVersion(); skipped++) {
+                    missing.put(skipped, now);
+                }
+                version = change.getVersion();
+            }
+            while (missing.size() > MAX_MISSING) {
+                missing.remove(missing.keySet().iterator().next());
+            }
+            changed += deliver(batch);
+        } while (batch.size() == BATCH_SIZE);
+        pruneIfDue();
+        return changed;
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+
+    // Skipped versions still being looked for.
+    synchronized int getMissingCount() {
+        return missing.size();
+    }
+
+    // Delivers the skipped versions that have been committed since, and gives up on those older than gapMillis.
+    private int recheckMissing() throws SQLException {
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        long[] versions = new long[missing.size()];
+        int i = 0;
+        for (long skipped : missing.keySet()) {
+            versions[i++] = skipped;
+        }
+        List<BookChange> late;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            late = dao.changesAt(conn, versions);
+        }
+        for (BookChange change : late) {
+            missing.remove(change.getVersion());
+        }
+        long expired = System.currentTimeMillis() - gapMillis;
+        missing.values().removeIf(since -> since < expired);
+        if (late.isEmpty()) {
+            return 0;
+        }
+        Metrics.add("changeFeed.late", late.size());
+        return deliver(late);
+    }
+
+    private int deliver(List<BookChange> batch) {
+        List<BookChange> latest = latestPerBook(batch);
+        for (BookChange change : latest) {
+            repository.changed(change);
+        }
+        for (Listener listener : listeners) {
+            listener.booksChanged(latest);
+        }
+        return latest.size();
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (SQLException e) {
+            // Retried on the next interval
+            Metrics.error("errors.changeFeed", e);
+        }
+    }
+
+    // Several changes to one book collapse into its current state; an insert stays an insert.
+    private static List<BookChange> latestPerBook(List<BookChange> batch) {
+        Map<Integer, BookChange> latest = new LinkedHashMap<>();
+        for (BookChange change : batch) {
+            BookChange previous = latest.remove(change.getBookId());
+            BookChange.Type type = previous != null && previous.getType() == BookChange.Type.INSERT && !change.isDeleted()
+                    ? BookChange.Type.INSERT : change.getType();
+            latest.put(change.getBookId(), new BookChange(change.getVersion(), change.getBookId(), type, change.getBook()));
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    private void pruneIfDue() throws SQLException {
+        long now = System.currentTimeMillis();
+        if (retentionMillis <= 0 || now - lastPruned < PRUNE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastPruned = now;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            dao.pruneChanges(conn, new Timestamp(now - retentionMillis));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.library.book;
+
+import org.library.database.DatabaseManager;
+import org.library.database.StorageBackend;
+import org.library.metrics.Metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+// Bulk import and export of the books table as CSV. Both directions stream, so memory use does not grow
+// with the size of the file or the table.
+public class BookCsv {
+    public static final String HEADER = "id,title,author,available";
+
+    private final int batchSize;
+    private final int fetchSize;
+    private final BookDao dao = new BookDao(false);
+
+    public BookCsv() {
+        this(DatabaseManager.getBackend());
+    }
+
+    // Exports with the backend's streaming fetch size unless library.export.fetchSize is set.
+    public BookCsv(StorageBackend backend) {
+        this(Integer.getInteger("library.import.batchSize", 1000),
+                Integer.getInteger("library.export.fetchSize", backend.getStreamingFetchSize()));
+    }
+
+    // A fetch size of 0 leaves the driver's default.
+    public BookCsv(int batchSize, int fetchSize) {
+        this.batchSize = batchSize;
+        this.fetchSize = fetchSize;
+    }
+
+    // Reads title,author[,available] records (an optional id column and a header line are accepted) and inserts
+    // them with JDBC batches. Each batch is committed on its own, so a cancelled import keeps the rows committed
+    // so far. Returns the number of imported books.
+    public long importBooks(Reader source, LongConsumer progress, BooleanSupplier cancelled) throws IOException, SQLException {
+        CsvReader csv = new CsvReader(source instanceof BufferedReader ? source : new BufferedReader(source));
+        List<String> record = csv.next();
+        // Without a header the records are title,author[,available]; exported files carry a leading id column
+        int offset = 0;
+        if (record != null && isHeader(record.get(0))) {
+            offset = record.get(0).trim().equalsIgnoreCase("id") ? 1 : 0;
+            record = csv.next();
+        }
+
+        long imported = 0;
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("INSERT INTO books (title, author, available) VALUES (?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false);
+            int batched = 0;
+            for (; record != null; record = csv.next()) {
+                if (record.size() == 1 && record.get(0).trim().isEmpty()) {
+                    continue;
+                }
+                if (record.size() < offset + 2) {
+                    throw new IOException("Line " + (csv.getLine() - 1) + ": expected title and author");
+                }
+                stmt.setString(1, record.get(offset));
+                stmt.setString(2, record.get(offset + 1));
+                stmt.setBoolean(3, record.size() <= offset + 2 || parseBoolean(record.get(offset + 2)));
+                stmt.addBatch();
+                if (++batched == batchSize) {
+                    imported += flush(conn, stmt, batched);
+                    batched = 0;
+                    progress.accept(imported);
+                    if (cancelled.getAsBoolean()) {
+                        throw new InterruptedIOException("Import cancelled after " + imported + " books");
+                    }
+                }
+            }
+            if (batched > 0) {
+                imported += flush(conn, stmt, batched);
+                progress.accept(imported);
+            }
+        }
+        return imported;
+    }
+
+    // Writes every book in id order. Returns the number of exported books.
+    public long exportBooks(Writer out, LongConsumer progress, BooleanSupplier cancelled) throws IOException, SQLException {
+        long exported = 0;
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            if (fetchSize != 0) {
+                stmt.setFetchSize(fetchSize);
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT id, title, author, available FROM books ORDER BY id")) {
+                out.write(HEADER);
+                out.write('\n');
+                while (rs.next()) {
+                    out.write(Integer.toString(rs.getInt(1)));
+                    out.write(',');
+                    writeField(out, rs.getString(2));
+                    out.write(',');
+                    writeField(out, rs.getString(3));
+                    out.write(',');
+                    out.write(rs.getBoolean(4) ? "true" : "false");
+                    out.write('\n');
+                    if (++exported % batchSize == 0) {
+                        progress.accept(exported);
+                        if (cancelled.getAsBoolean()) {
+                            throw new InterruptedIOException("Export cancelled after " + exported + " books");
+                        }
+                    }
+                }
+            }
+        }
+        out.flush();
+        Metrics.add("rows.books.export", exported);
+        progress.accept(exported);
+        return exported;
+    }
+
+    // Executes and commits one batch, logging the new ids for the change feed in the same transaction.
+    private int flush(Connection conn, PreparedStatement stmt, int batched) throws SQLException {
+        stmt.executeBatch();
+        int[] ids = new int[batched];
+        int count = 0;
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            while (keys.next() && count < batched) {
+                ids[count++] = keys.getInt(1);
+            }
+        }
+        dao.logChanges(conn, Arrays.copyOf(ids, count), BookChange.Type.INSERT);
+        conn.commit();
+        return batched;
+    }
+
+    private static boolean isHeader(String firstField) {
+        String name = firstField.trim();
+        return name.equalsIgnoreCase("id") || name.equalsIgnoreCase("title");
+    }
+
+    private static boolean parseBoolean(String value) {
+        String v = value.trim();
+        return v.isEmpty() || v.equalsIgnoreCase("true") || v.equalsIgnoreCase("yes") || v.equals("1");
+    }
+
+    private static void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
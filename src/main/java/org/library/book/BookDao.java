@@ -0,0 +1,392 @@
+package org.library.book;
+
+import org.library.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// SQL for the books table. Methods run on the caller's connection so they can share a transaction; the pool
+// keeps their prepared statements open per connection. Rows are decoded by column position.
+public class BookDao {
+    private static final String SELECT = "SELECT id, title, author, available FROM books";
+    private static final int ID = 1;
+    private static final int TITLE = 2;
+    private static final int AUTHOR = 3;
+    private static final int AVAILABLE = 4;
+    // Ids per IN list of the bulk writes, to stay well within statement size limits
+    private static final int IN_CHUNK = 500;
+    private static final String CHANGES = "SELECT b.id, b.title, b.author, b.available, c.version, c.book_id, c.change_type "
+            + "FROM book_changes c LEFT JOIN books b ON b.id = c.book_id ";
+
+    // Substring search through the ngram FULLTEXT index instead of a LIKE scan.
+    private final boolean fullText;
+
+    public BookDao(boolean fullText) {
+        this.fullText = fullText;
+    }
+
+    public int count(Connection conn, BookQuery query) throws SQLException {
+        List<String> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM books WHERE 1 = 1" + where(query, params);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, params, 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Keyset page: up to limit matching books after the anchor book in the query's order; null starts at the first
+    // match. The anchor's id and sort value are bound directly rather than looked up, so paging walks the title,
+    // author or (available, id) index from where the last page ended, even if the anchor has since been deleted.
+    public List<Book> fetchPage(Connection conn, BookQuery query, Book after, int limit) throws SQLException {
+        List<String> params = new ArrayList<>();
+        String sql = SELECT + " WHERE 1 = 1" + after(query, after) + where(query, params) + orderBy(query) + " LIMIT ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int next = bindAfter(stmt, query, after, 1);
+            next = bind(stmt, params, next);
+            stmt.setInt(next, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<Book> result = new ArrayList<>(limit);
+                while (rs.next()) {
+                    result.add(read(rs));
+                }
+                Metrics.add("rows.books.page", result.size());
+                return result;
+            }
+        }
+    }
+
+    // The matching book at the given position in the query's order, or null past the end. The offset is skipped over
+    // ids only, so the scan stays on the index, and the one row found is read by primary key.
+    public Book bookAtOffset(Connection conn, BookQuery query, int offset) throws SQLException {
+        List<String> params = new ArrayList<>();
+        String sql = "SELECT b.id, b.title, b.author, b.available FROM books b JOIN (SELECT id FROM books WHERE 1 = 1"
+                + where(query, params) + orderBy(query) + " LIMIT 1 OFFSET ?) k ON k.id = b.id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int next = bind(stmt, params, 1);
+            stmt.setInt(next, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        }
+    }
+
+    public Book findById(Connection conn, int id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT + " WHERE id = ?")) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        }
+    }
+
+    // Writes also append to the change log, so run them in a transaction with the caller's other work.
+    public Book insert(Connection conn, String title, String author) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO books (title, author, available) VALUES (?, ?, true)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, title);
+            stmt.setString(2, author);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                Book book = new Book(keys.getInt(1), title, author, true);
+                logChange(conn, book.getId(), BookChange.Type.INSERT);
+                return book;
+            }
+        }
+    }
+
+    // Returns false if the book no longer exists.
+    public boolean update(Connection conn, Book book) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE books SET title = ?, author = ? WHERE id = ?")) {
+            stmt.setString(1, book.getTitle());
+            stmt.setString(2, book.getAuthor());
+            stmt.setInt(3, book.getId());
+            return stmt.executeUpdate() > 0 && logChange(conn, book.getId(), BookChange.Type.UPDATE);
+        }
+    }
+
+    public boolean delete(Connection conn, int id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM books WHERE id = ?")) {
+            stmt.setInt(1, id);
+            return stmt.executeUpdate() > 0 && logChange(conn, id, BookChange.Type.DELETE);
+        }
+    }
+
+    // Bulk writes lock the rows they will change, write them with one statement per chunk of ids and log
+    // them with one batch. Each returns the ids it changed; ids of books that no longer exist are skipped.
+    public int[] deleteAll(Connection conn, int[] ids) throws SQLException {
+        int[] existing = lockIds(conn, ids, "");
+        writeIds(conn, "DELETE FROM books", existing);
+        logChanges(conn, existing, BookChange.Type.DELETE);
+        return existing;
+    }
+
+    // Books on loan are not made available; they become available again when they are returned.
+    public int[] setAvailable(Connection conn, int[] ids, boolean available) throws SQLException {
+        String condition = available
+                ? " AND available = false AND NOT EXISTS (SELECT 1 FROM loans l WHERE l.book_id = books.id AND l.returned_at IS NULL)"
+                : " AND available = true";
+        int[] changed = lockIds(conn, ids, condition);
+        writeIds(conn, "UPDATE books SET available = " + available, changed);
+        logChanges(conn, changed, BookChange.Type.UPDATE);
+        return changed;
+    }
+
+    public int[] renameAuthor(Connection conn, int[] ids, String author) throws SQLException {
+        int[] changed = lockIds(conn, ids, " AND (author IS NULL OR author <> ?)", author);
+        writeIds(conn, "UPDATE books SET author = ?", changed, author);
+        logChanges(conn, changed, BookChange.Type.UPDATE);
+        return changed;
+    }
+
+    // Flips available from true to false; returns false if the book was not available, so concurrent
+    // borrowers are decided by the database.
+    public boolean markBorrowed(Connection conn, int id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE books SET available = false WHERE id = ? AND available = true")) {
+            stmt.setInt(1, id);
+            return stmt.executeUpdate() > 0 && logChange(conn, id, BookChange.Type.UPDATE);
+        }
+    }
+
+    public void markReturned(Connection conn, int id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE books SET available = true WHERE id = ?")) {
+            stmt.setInt(1, id);
+            if (stmt.executeUpdate() > 0) {
+                logChange(conn, id, BookChange.Type.UPDATE);
+            }
+        }
+    }
+
+    // Logs rows written in bulk, e.g. by a batched import.
+    public void logChanges(Connection conn, int[] ids, BookChange.Type type) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO book_changes (book_id, change_type) VALUES (?, ?)")) {
+            for (int id : ids) {
+                stmt.setInt(1, id);
+                stmt.setString(2, type.getCode());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    public long latestChangeVersion(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM book_changes");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // Change log entries after the given version, oldest first, each with the current state of its book.
+    public List<BookChange> changesSince(Connection conn, long version, int limit) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(CHANGES + "WHERE c.version > ? ORDER BY c.version LIMIT ?")) {
+            stmt.setLong(1, version);
+            stmt.setInt(2, limit);
+            return readChanges(stmt);
+        }
+    }
+
+    // The change log entries with the given versions that exist, oldest first.
+    public List<BookChange> changesAt(Connection conn, long[] versions) throws SQLException {
+        List<BookChange> changes = new ArrayList<>();
+        for (int from = 0; from < versions.length; from += IN_CHUNK) {
+            int to = Math.min(versions.length, from + IN_CHUNK);
+            try (PreparedStatement stmt = conn.prepareStatement(CHANGES + "WHERE c.version IN (" + placeholders(to - from)
+                    + ") ORDER BY c.version")) {
+                for (int i = from; i < to; i++) {
+                    stmt.setLong(i - from + 1, versions[i]);
+                }
+                changes.addAll(readChanges(stmt));
+            }
+        }
+        return changes;
+    }
+
+    private static List<BookChange> readChanges(PreparedStatement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            List<BookChange> changes = new ArrayList<>();
+            while (rs.next()) {
+                Book book = rs.getObject(ID) != null ? read(rs) : null;
+                changes.add(new BookChange(rs.getLong(5), rs.getInt(6), BookChange.Type.fromCode(rs.getString(7)), book));
+            }
+            Metrics.add("rows.books.changes", changes.size());
+            return changes;
+        }
+    }
+
+    public int pruneChanges(Connection conn, Timestamp before) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM book_changes WHERE changed_at < ?")) {
+            stmt.setTimestamp(1, before);
+            return stmt.executeUpdate();
+        }
+    }
+
+    private static boolean logChange(Connection conn, int bookId, BookChange.Type type) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO book_changes (book_id, change_type) VALUES (?, ?)")) {
+            stmt.setInt(1, bookId);
+            stmt.setString(2, type.getCode());
+            stmt.executeUpdate();
+            return true;
+        }
+    }
+
+    // Ids among the given ones whose rows match the condition, locked until the transaction ends.
+    private static int[] lockIds(Connection conn, int[] ids, String condition, String... params) throws SQLException {
+        int[] found = new int[ids.length];
+        int count = 0;
+        for (int from = 0; from < ids.length; from += IN_CHUNK) {
+            int to = Math.min(ids.length, from + IN_CHUNK);
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM books WHERE id IN (" + placeholders(to - from) + ")"
+                    + condition + " FOR UPDATE")) {
+                int index = bindIds(stmt, ids, from, to, 1);
+                for (String param : params) {
+                    stmt.setString(index++, param);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        found[count++] = rs.getInt(1);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    // Runs the statement with a WHERE id IN (...) clause per chunk; the parameters come before the ids.
+    private static void writeIds(Connection conn, String sql, int[] ids, String... params) throws SQLException {
+        for (int from = 0; from < ids.length; from += IN_CHUNK) {
+            int to = Math.min(ids.length, from + IN_CHUNK);
+            try (PreparedStatement stmt = conn.prepareStatement(sql + " WHERE id IN (" + placeholders(to - from) + ")")) {
+                int index = 1;
+                for (String param : params) {
+                    stmt.setString(index++, param);
+                }
+                bindIds(stmt, ids, from, to, index);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    private static int bindIds(PreparedStatement stmt, int[] ids, int from, int to, int first) throws SQLException {
+        int index = first;
+        for (int i = from; i < to; i++) {
+            stmt.setInt(index++, ids[i]);
+        }
+        return index;
+    }
+
+    // Full chunks reuse one statement text, so the pool's statement cache sees few distinct shapes.
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.toString();
+    }
+
+    static Book read(ResultSet rs) throws SQLException {
+        return new Book(rs.getInt(ID), rs.getString(TITLE), rs.getString(AUTHOR), rs.getBoolean(AVAILABLE));
+    }
+
+    // Extra conditions for the query, served by the indexes from db/mysql/V2__book_search_indexes.sql.
+    private String where(BookQuery query, List<String> params) {
+        StringBuilder sql = new StringBuilder();
+        if (query.getAvailability() == BookQuery.Availability.AVAILABLE) {
+            sql.append(" AND available = true");
+        } else if (query.getAvailability() == BookQuery.Availability.BORROWED) {
+            sql.append(" AND available = false");
+        }
+        if (!query.hasText()) {
+            return sql.toString();
+        }
+        String text = query.getText();
+        if (query.getMode() == BookQuery.Mode.PREFIX) {
+            // A trailing wildcard only keeps the B-tree indexes on title and author usable.
+            sql.append(" AND (title LIKE ? OR author LIKE ?)");
+            params.add(escapeLike(text) + "%");
+            params.add(escapeLike(text) + "%");
+        } else if (fullText && text.length() >= 2) {
+            // The ngram parser indexes every 2-character sequence, so a quoted phrase matches substrings.
+            sql.append(" AND MATCH(title, author) AGAINST (? IN BOOLEAN MODE)");
+            params.add('"' + text.replace("\"", "") + '"');
+        } else {
+            sql.append(" AND (title LIKE ? OR author LIKE ?)");
+            params.add("%" + escapeLike(text) + "%");
+            params.add("%" + escapeLike(text) + "%");
+        }
+        return sql.toString();
+    }
+
+    private static String orderBy(BookQuery query) {
+        String direction = query.isDescending() ? " DESC" : "";
+        if (query.getSort() == BookQuery.Sort.ID) {
+            return " ORDER BY id" + direction;
+        }
+        return " ORDER BY " + query.getSort().getColumn() + direction + ", id" + direction;
+    }
+
+    // Keyset condition: rows that come after the anchor book in the query's order.
+    private static String after(BookQuery query, Book after) {
+        if (after == null) {
+            return "";
+        }
+        String op = query.isDescending() ? "<" : ">";
+        if (query.getSort() == BookQuery.Sort.ID) {
+            return " AND id " + op + " ?";
+        }
+        // Written as a range on the sort column plus a filter for the ties, so the index is used as a range scan;
+        // the equivalent "column > anchor OR column = anchor AND id > ?" is not recognised as one.
+        String column = query.getSort().getColumn();
+        return " AND " + column + " " + op + "= ? AND (" + column + " " + op + " ? OR id " + op + " ?)";
+    }
+
+    private static int bindAfter(PreparedStatement stmt, BookQuery query, Book after, int first) throws SQLException {
+        if (after == null) {
+            return first;
+        }
+        if (query.getSort() == BookQuery.Sort.ID) {
+            stmt.setInt(first, after.getId());
+            return first + 1;
+        }
+        Object value = sortValue(query.getSort(), after);
+        stmt.setObject(first, value);
+        stmt.setObject(first + 1, value);
+        stmt.setInt(first + 2, after.getId());
+        return first + 3;
+    }
+
+    // The value of the book's sort column; the id for id order.
+    static Object sortValue(BookQuery.Sort sort, Book book) {
+        switch (sort) {
+            case TITLE:
+                return book.getTitle();
+            case AUTHOR:
+                return book.getAuthor();
+            case AVAILABLE:
+                return book.isAvailable();
+            default:
+                return book.getId();
+        }
+    }
+
+    private static int bind(PreparedStatement stmt, List<String> params, int first) throws SQLException {
+        int index = first;
+        for (String param : params) {
+            stmt.setString(index++, param);
+        }
+        return index;
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
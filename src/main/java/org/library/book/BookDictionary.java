@@ -0,0 +1,291 @@
+package org.library.book;
+
+import org.library.database.AsyncDatabase;
+import org.library.database.DatabaseManager;
+import org.library.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+// The distinct titles and authors of the catalogue, for autocompletion. Loaded with a scan of the books table in
+// id order, a page at a time, then kept up to date by the repository's writes and, once it follows the change
+// feed, by those of other clients. Until loaded it completes nothing.
+//
+// The title and author of every book are kept by id, so an edit only needs the book's new values: the old ones to
+// take out of the indexes are looked up here, and an edit that was already applied, such as the feed's echo of a
+// local write, changes nothing. Edits made while a load is scanning are held and applied once it has finished.
+public class BookDictionary {
+    private static final int SCAN_PAGE = 10_000;
+
+    private final BookDao dao;
+    private final PrefixIndex titles = new PrefixIndex();
+    private final PrefixIndex authors = new PrefixIndex();
+    private volatile boolean loaded;
+    private CompletableFuture<Void> loading;
+    private BookChangeFeed feed;
+    // Guarded by this, like the held edits
+    private Books books = new Books(16);
+    private List<Edit> held;
+
+    BookDictionary(BookDao dao) {
+        this.dao = dao;
+    }
+
+    public void load() throws SQLException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            held = new ArrayList<>();
+        }
+        Books scanned = new Books(SCAN_PAGE);
+        try (Connection conn = DatabaseManager.getConnection()) {
+            Book after = null;
+            List<Book> page;
+            do {
+                page = dao.fetchPage(conn, BookQuery.ALL, after, SCAN_PAGE);
+                // In id order, so each book is appended
+                for (Book book : page) {
+                    scanned.insert(scanned.size, book.getId(), book.getTitle(), book.getAuthor());
+                }
+                if (!page.isEmpty()) {
+                    after = page.get(page.size() - 1);
+                }
+            } while (page.size() == SCAN_PAGE);
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                held = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            books = scanned;
+            titles.replaceAll(Arrays.asList(scanned.titles).subList(0, scanned.size));
+            authors.replaceAll(Arrays.asList(scanned.authors).subList(0, scanned.size));
+            List<Edit> edits = held;
+            held = null;
+            apply(edits);
+            loaded = true;
+        }
+        Metrics.record("dictionary.load", System.nanoTime() - start);
+    }
+
+    // Loads in the background; a load already under way is shared.
+    public synchronized CompletableFuture<Void> reload() {
+        if (loading == null || loading.isDone()) {
+            BookChangeFeed following = feed;
+            loading = AsyncDatabase.supply(() -> {
+                if (following != null) {
+                    // Fixes the feed's starting version before the scan, so no change falls between the two
+                    following.poll();
+                }
+                load();
+                return null;
+            }, 0);
+        }
+        return loading;
+    }
+
+    // Loads the dictionary and from then on applies the changes the feed reports, other clients' included.
+    public CompletableFuture<Void> follow(BookChangeFeed changes) {
+        synchronized (this) {
+            feed = changes;
+        }
+        changes.addListener(this::changed);
+        return reload();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public List<String> completeTitles(String prefix, int limit) {
+        return timed(titles, prefix, limit);
+    }
+
+    public List<String> completeAuthors(String prefix, int limit) {
+        return timed(authors, prefix, limit);
+    }
+
+    // Authors first, then titles, for the search box, which matches either.
+    public List<String> complete(String prefix, int limit) {
+        List<String> matches = new ArrayList<>(completeAuthors(prefix, limit));
+        if (matches.size() < limit) {
+            matches.addAll(completeTitles(prefix, limit - matches.size()));
+        }
+        return matches;
+    }
+
+    // The feed's listener; each change carries the book as it is now.
+    void changed(List<BookChange> changes) {
+        List<Edit> edits = new ArrayList<>(changes.size());
+        for (BookChange change : changes) {
+            Book book = change.getBook();
+            edits.add(new Edit(change.getBookId(), book == null ? null : book.getTitle(), book == null ? null : book.getAuthor()));
+        }
+        edit(edits);
+    }
+
+    void written(Book book) {
+        edit(Collections.singletonList(new Edit(book.getId(), book.getTitle(), book.getAuthor())));
+    }
+
+    void removed(int[] ids) {
+        List<Edit> edits = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            edits.add(new Edit(id, null, null));
+        }
+        edit(edits);
+    }
+
+    void renamed(int[] ids, String author) {
+        List<Edit> edits = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            edits.add(new Edit(id, null, author));
+        }
+        edit(edits);
+    }
+
+    // After writes whose new values are unknown, e.g. an import.
+    void stale() {
+        if (loaded) {
+            reload();
+        }
+    }
+
+    // Ignored until a load has started, since the load reads the books as they are then.
+    private synchronized void edit(List<Edit> edits) {
+        if (held != null) {
+            held.addAll(edits);
+        } else if (loaded) {
+            apply(edits);
+        }
+    }
+
+    // One batch per index, whatever the number of edits.
+    private void apply(List<Edit> edits) {
+        List<String> oldTitles = new ArrayList<>();
+        List<String> newTitles = new ArrayList<>();
+        List<String> oldAuthors = new ArrayList<>();
+        List<String> newAuthors = new ArrayList<>();
+        for (Edit edit : edits) {
+            int row = books.indexOf(edit.id);
+            String oldTitle = row >= 0 ? books.titles[row] : null;
+            String oldAuthor = row >= 0 ? books.authors[row] : null;
+            String title = edit.title;
+            if (title == null && edit.author != null) {
+                // Only the author changed, of a book that may not be known here
+                title = oldTitle;
+                if (title == null) {
+                    continue;
+                }
+            }
+            String author = title == null ? null : edit.author;
+            if (title == null) {
+                if (oldTitle != null) {
+                    books.remove(row);
+                }
+            } else if (row >= 0) {
+                if (oldTitle == null) {
+                    books.gaps--;
+                }
+                books.titles[row] = title;
+                books.authors[row] = author;
+            } else {
+                books.insert(-row - 1, edit.id, title, author);
+            }
+            if (!Objects.equals(oldTitle, title)) {
+                oldTitles.add(oldTitle);
+                newTitles.add(title);
+            }
+            if (!Objects.equals(oldAuthor, author)) {
+                oldAuthors.add(oldAuthor);
+                newAuthors.add(author);
+            }
+        }
+        titles.update(oldTitles, newTitles);
+        authors.update(oldAuthors, newAuthors);
+    }
+
+    private static List<String> timed(PrefixIndex index, String prefix, int limit) {
+        long start = System.nanoTime();
+        List<String> matches = index.complete(prefix, limit);
+        Metrics.record("dictionary.complete", System.nanoTime() - start);
+        return matches;
+    }
+
+    // The title and author of each book, in parallel arrays sorted by id and searched by binary search, so the
+    // memory follows the number of books rather than the largest id. Books arrive mostly in id order, as a scan
+    // or as new rows, and are then appended. A deleted book leaves its id with null values until more than half
+    // the rows are such gaps, so deleting a selection does not shift the arrays once per book.
+    private static final class Books {
+        int[] ids;
+        String[] titles;
+        String[] authors;
+        int size;
+        int gaps;
+
+        Books(int capacity) {
+            ids = new int[capacity];
+            titles = new String[capacity];
+            authors = new String[capacity];
+        }
+
+        // The book's row, or -(insertion point) - 1.
+        int indexOf(int id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        void insert(int row, int id, String title, String author) {
+            if (size == ids.length) {
+                int capacity = Math.max(16, size + (size >> 1));
+                ids = Arrays.copyOf(ids, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                authors = Arrays.copyOf(authors, capacity);
+            }
+            System.arraycopy(ids, row, ids, row + 1, size - row);
+            System.arraycopy(titles, row, titles, row + 1, size - row);
+            System.arraycopy(authors, row, authors, row + 1, size - row);
+            ids[row] = id;
+            titles[row] = title;
+            authors[row] = author;
+            size++;
+        }
+
+        void remove(int row) {
+            titles[row] = null;
+            authors[row] = null;
+            if (++gaps > size / 2) {
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if (titles[i] != null) {
+                        ids[kept] = ids[i];
+                        titles[kept] = titles[i];
+                        authors[kept++] = authors[i];
+                    }
+                }
+                Arrays.fill(titles, kept, size, null);
+                Arrays.fill(authors, kept, size, null);
+                size = kept;
+                gaps = 0;
+            }
+        }
+    }
+
+    // The new values of one book: both null when it was deleted, only the title null when just the author changed.
+    private static final class Edit {
+        final int id;
+        final String title;
+        final String author;
+
+        Edit(int id, String title, String author) {
+            this.id = id;
+            this.title = title;
+            this.author = author;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.library.book;
+
+import java.sql.SQLException;
+import java.util.List;
+
+public interface BookPageSource {
+    int count(BookQuery query) throws SQLException;
+
+    // Up to limit matching books that follow the anchor in the query's order; null starts at the first match. Only
+    // the anchor's id and sort value are used, so it may be a book that has since been changed or deleted.
+    List<Book> fetchPage(BookQuery query, Book after, int limit) throws SQLException;
+
+    // The matching book at the given position in the query's order, or null past the end; used as the anchor of a
+    // page that was jumped to.
+    Book bookAtOffset(BookQuery query, int offset) throws SQLException;
+}
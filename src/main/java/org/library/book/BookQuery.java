@@ -0,0 +1,147 @@
+package org.library.book;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Objects;
+
+// Immutable catalogue filter: a search text matched against title and author, plus an availability filter,
+// and the order the matches are listed in.
+public class BookQuery {
+    public enum Mode {
+        PREFIX,
+        CONTAINS
+    }
+
+    public enum Availability {
+        ALL,
+        AVAILABLE,
+        BORROWED
+    }
+
+    // Ties are broken by id, so every order is total and can be paged by keyset.
+    public enum Sort {
+        ID("id", Comparator.comparingInt(Book::getId)),
+        TITLE("title", Comparator.comparing(Book::getTitle, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))),
+        AUTHOR("author", Comparator.comparing(Book::getAuthor, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))),
+        AVAILABLE("available", Comparator.comparing(Book::isAvailable));
+
+        private final String column;
+        private final Comparator<Book> order;
+
+        Sort(String column, Comparator<Book> order) {
+            this.column = column;
+            this.order = order;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+    }
+
+    public static final BookQuery ALL = new BookQuery("", Mode.PREFIX, Availability.ALL);
+
+    private final String text;
+    private final Mode mode;
+    private final Availability availability;
+    private final Sort sort;
+    private final boolean descending;
+
+    public BookQuery(String text, Mode mode, Availability availability) {
+        this(text, mode, availability, Sort.ID, false);
+    }
+
+    public BookQuery(String text, Mode mode, Availability availability, Sort sort, boolean descending) {
+        this.text = text == null ? "" : text.trim();
+        this.mode = mode;
+        this.availability = availability;
+        this.sort = sort;
+        this.descending = descending;
+    }
+
+    // The same filter listed in another order.
+    public BookQuery sortedBy(Sort sort, boolean descending) {
+        return sort == this.sort && descending == this.descending ? this : new BookQuery(text, mode, availability, sort, descending);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Availability getAvailability() {
+        return availability;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    // Whether the matches are listed in plain id order, the order new books are appended in.
+    public boolean isIdOrder() {
+        return sort == Sort.ID && !descending;
+    }
+
+    // Client-side equivalent of the SQL order. Strings compare case-insensitively like the database collation,
+    // which may still differ for accented text; a row placed slightly off is corrected by the next reload.
+    public int compare(Book a, Book b) {
+        int result = sort.order.compare(a, b);
+        if (result == 0) {
+            result = Integer.compare(a.getId(), b.getId());
+        }
+        return descending ? -result : result;
+    }
+
+    public boolean hasText() {
+        return !text.isEmpty();
+    }
+
+    public boolean isFiltered() {
+        return hasText() || availability != Availability.ALL;
+    }
+
+    // Client-side equivalent of the SQL filter, used to decide whether a locally changed book belongs in the view.
+    public boolean matches(Book book) {
+        if (availability == Availability.AVAILABLE && !book.isAvailable()
+                || availability == Availability.BORROWED && book.isAvailable()) {
+            return false;
+        }
+        if (!hasText()) {
+            return true;
+        }
+        String needle = text.toLowerCase(Locale.ROOT);
+        return matches(book.getTitle(), needle) || matches(book.getAuthor(), needle);
+    }
+
+    private boolean matches(String value, String needle) {
+        if (value == null) {
+            return false;
+        }
+        String haystack = value.toLowerCase(Locale.ROOT);
+        return mode == Mode.PREFIX ? haystack.startsWith(needle) : haystack.contains(needle);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BookQuery)) {
+            return false;
+        }
+        BookQuery other = (BookQuery) o;
+        return text.equals(other.text) && mode == other.mode && availability == other.availability
+                && sort == other.sort && descending == other.descending;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(text, mode, availability, sort, descending);
+    }
+}
@@ -0,0 +1,293 @@
+package org.library.book;
+
+import org.library.database.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Shared access to the books table with a bounded write-through cache. Rows are cached by id; the id lists of
+// recently read pages are cached as well, so windows showing the same part of the catalogue share one read.
+// Entries expire after a short time so changes made by other clients still show up.
+public class BookRepository implements BookPageSource {
+    private static final BookRepository SHARED = new BookRepository(
+            Integer.getInteger("library.bookCache.size", 10_000),
+            Long.getLong("library.bookCache.ttlMillis", 30_000),
+            Boolean.parseBoolean(System.getProperty("library.search.fullText",
+                    String.valueOf(DatabaseManager.getBackend().supportsFullText()))));
+
+    private final long ttlMillis;
+    private final BookDao dao;
+    private final LinkedHashMap<Integer, Entry<Book>> books;
+    private final LinkedHashMap<PageKey, Entry<int[]>> pages;
+    private final LinkedHashMap<BookQuery, Entry<Integer>> counts = boundedLru(64);
+    private final BookDictionary dictionary;
+
+    public BookRepository(int maxBooks, long ttlMillis, boolean fullText) {
+        this.ttlMillis = ttlMillis;
+        this.dao = new BookDao(fullText);
+        this.dictionary = new BookDictionary(dao);
+        this.books = boundedLru(maxBooks);
+        this.pages = boundedLru(Math.max(1, maxBooks / 100));
+    }
+
+    public static BookRepository shared() {
+        return SHARED;
+    }
+
+    // Titles and authors for autocompletion, empty until loaded.
+    public BookDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public int count(BookQuery query) throws SQLException {
+        // The order does not change the count, so re-sorting a window is answered from the cache
+        BookQuery filter = query.sortedBy(BookQuery.Sort.ID, false);
+        synchronized (this) {
+            Entry<Integer> cached = counts.get(filter);
+            if (isFresh(cached)) {
+                return cached.value;
+            }
+        }
+        int total;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            total = dao.count(conn, query);
+        }
+        synchronized (this) {
+            counts.put(filter, new Entry<>(total));
+        }
+        return total;
+    }
+
+    @Override
+    public List<Book> fetchPage(BookQuery query, Book after, int limit) throws SQLException {
+        PageKey key = new PageKey(query, after, limit);
+        synchronized (this) {
+            Entry<int[]> page = pages.get(key);
+            if (isFresh(page)) {
+                List<Book> cached = cachedBooks(page.value);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+
+        List<Book> result;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            result = dao.fetchPage(conn, query, after, limit);
+        }
+        int[] ids = new int[result.size()];
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                Book book = result.get(i);
+                ids[i] = book.getId();
+                books.put(book.getId(), new Entry<>(book));
+            }
+            pages.put(key, new Entry<>(ids));
+        }
+        return result;
+    }
+
+    @Override
+    public Book bookAtOffset(BookQuery query, int offset) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return dao.bookAtOffset(conn, query, offset);
+        }
+    }
+
+    // Returns the book with the given id, or null if it does not exist.
+    public Book findById(int id) throws SQLException {
+        synchronized (this) {
+            Entry<Book> cached = books.get(id);
+            if (isFresh(cached)) {
+                return cached.value;
+            }
+        }
+        Book book;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            book = dao.findById(conn, id);
+        }
+        if (book == null) {
+            invalidate(id);
+            return null;
+        }
+        synchronized (this) {
+            books.put(id, new Entry<>(book));
+        }
+        return book;
+    }
+
+    public Book add(String title, String author) throws SQLException {
+        Book book = DatabaseManager.inTransaction(conn -> dao.insert(conn, title, author));
+        synchronized (this) {
+            invalidateMembership();
+            books.put(book.getId(), new Entry<>(book));
+        }
+        dictionary.written(book);
+        return book;
+    }
+
+    // Returns false if the book no longer exists.
+    public boolean update(Book book) throws SQLException {
+        boolean updated = DatabaseManager.inTransaction(conn -> dao.update(conn, book));
+        if (!updated) {
+            invalidate(book.getId());
+            return false;
+        }
+        written(book);
+        dictionary.written(book);
+        return true;
+    }
+
+    public boolean delete(int id) throws SQLException {
+        boolean deleted = DatabaseManager.inTransaction(conn -> dao.delete(conn, id));
+        synchronized (this) {
+            books.remove(id);
+            invalidateMembership();
+        }
+        if (deleted) {
+            dictionary.removed(new int[]{id});
+        }
+        return deleted;
+    }
+
+    // Bulk versions of delete and update for a selection of books, each one transaction. They return the number
+    // of books changed; the rows are dropped from the cache and come back fresh from the change feed or the next read.
+    public int deleteAll(int[] ids) throws SQLException {
+        int[] deleted = DatabaseManager.inTransaction(conn -> dao.deleteAll(conn, ids));
+        synchronized (this) {
+            for (int id : deleted) {
+                books.remove(id);
+            }
+            invalidateMembership();
+        }
+        dictionary.removed(deleted);
+        return deleted.length;
+    }
+
+    public int setAvailable(int[] ids, boolean available) throws SQLException {
+        return writtenInBulk(DatabaseManager.inTransaction(conn -> dao.setAvailable(conn, ids, available)));
+    }
+
+    public int renameAuthor(int[] ids, String author) throws SQLException {
+        int[] renamed = DatabaseManager.inTransaction(conn -> dao.renameAuthor(conn, ids, author));
+        dictionary.renamed(renamed, author);
+        return writtenInBulk(renamed);
+    }
+
+    private synchronized int writtenInBulk(int[] ids) {
+        for (int id : ids) {
+            books.remove(id);
+        }
+        pages.keySet().removeIf(key -> !key.query.equals(BookQuery.ALL));
+        counts.keySet().removeIf(query -> !query.equals(BookQuery.ALL));
+        return ids.length;
+    }
+
+    // Records a row that was written through another path, e.g. a change of availability. The row may now
+    // match different searches or sort elsewhere, so cached page lists of filtered and sorted queries are dropped.
+    public synchronized void written(Book book) {
+        books.put(book.getId(), new Entry<>(book));
+        pages.keySet().removeIf(key -> !key.query.equals(BookQuery.ALL));
+        counts.keySet().removeIf(query -> !query.equals(BookQuery.ALL));
+    }
+
+    // Applies an entry of the change feed.
+    public synchronized void changed(BookChange change) {
+        if (change.isDeleted()) {
+            books.remove(change.getBookId());
+            invalidateMembership();
+        } else if (change.getType() == BookChange.Type.INSERT) {
+            books.put(change.getBookId(), new Entry<>(change.getBook()));
+            invalidateMembership();
+        } else {
+            written(change.getBook());
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        books.remove(id);
+    }
+
+    // Also reloads the dictionary, e.g. after an import.
+    public synchronized void invalidateAll() {
+        books.clear();
+        invalidateMembership();
+        dictionary.stale();
+    }
+
+    private void invalidateMembership() {
+        pages.clear();
+        counts.clear();
+    }
+
+    // Books for the given ids, or null if any of them is no longer cached.
+    private List<Book> cachedBooks(int[] ids) {
+        List<Book> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Entry<Book> entry = books.get(id);
+            if (!isFresh(entry)) {
+                return null;
+            }
+            result.add(entry.value);
+        }
+        return result;
+    }
+
+    private boolean isFresh(Entry<?> entry) {
+        return entry != null && System.currentTimeMillis() - entry.loadedAt < ttlMillis;
+    }
+
+    private static <K, V> LinkedHashMap<K, V> boundedLru(int maxSize) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    // A page is identified by the anchor's id and sort value, the only parts of it the query uses.
+    private static class PageKey {
+        private final BookQuery query;
+        private final int afterId;
+        private final Object afterValue;
+        private final int limit;
+
+        PageKey(BookQuery query, Book after, int limit) {
+            this.query = query;
+            this.afterId = after == null ? Integer.MIN_VALUE : after.getId();
+            this.afterValue = after == null ? null : BookDao.sortValue(query.getSort(), after);
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PageKey)) {
+                return false;
+            }
+            PageKey other = (PageKey) o;
+            return afterId == other.afterId && limit == other.limit && Objects.equals(afterValue, other.afterValue)
+                    && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, afterId, afterValue, limit);
+        }
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long loadedAt = System.currentTimeMillis();
+
+        Entry(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.library.book;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// Columnar storage for a run of books in the order they are added, normally a page in its query's order: ids in an
+// int[], availability in a BitSet and authors encoded through a shared dictionary. A row costs a few array slots
+// instead of a Book plus its boxed cells, and ids can be searched without touching any objects. The binary searches,
+// indexOf and insertionPoint, need the rows in id order; find works in any order.
+public class BookTable {
+    private final StringDictionary authors;
+    private int[] ids;
+    private String[] titles;
+    private int[] authorCodes;
+    private final BitSet available = new BitSet();
+    private int size;
+
+    public BookTable(StringDictionary authors, int capacity) {
+        this.authors = authors;
+        this.ids = new int[Math.max(capacity, 1)];
+        this.titles = new String[ids.length];
+        this.authorCodes = new int[ids.length];
+    }
+
+    public static BookTable of(List<Book> books, StringDictionary authors) {
+        BookTable table = new BookTable(authors, books.size());
+        for (Book book : books) {
+            table.add(book);
+        }
+        return table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public String getTitle(int row) {
+        return titles[row];
+    }
+
+    public String getAuthor(int row) {
+        return authors.decode(authorCodes[row]);
+    }
+
+    public boolean isAvailable(int row) {
+        return available.get(row);
+    }
+
+    // Materializes a row, e.g. for the selection of a table.
+    public Book getBook(int row) {
+        return new Book(ids[row], titles[row], getAuthor(row), available.get(row));
+    }
+
+    public void add(Book book) {
+        add(book.getId(), book.getTitle(), book.getAuthor(), book.isAvailable());
+    }
+
+    // Appends a row; it is up to the caller to add rows in the order the table is meant to keep.
+    public void add(int id, String title, String author, boolean isAvailable) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            authorCodes = Arrays.copyOf(authorCodes, capacity);
+        }
+        set(size++, id, title, author, isAvailable);
+    }
+
+    // Inserts before the given row; the id must fall between its neighbours for the order to hold.
+    public void insert(int row, Book book) {
+        add(book);
+        for (int i = size - 1; i > row; i--) {
+            ids[i] = ids[i - 1];
+            titles[i] = titles[i - 1];
+            authorCodes[i] = authorCodes[i - 1];
+            available.set(i, available.get(i - 1));
+        }
+        set(row, book);
+    }
+
+    // Replaces the row in place; the id must stay the same for the order to hold.
+    public void set(int row, Book book) {
+        set(row, book.getId(), book.getTitle(), book.getAuthor(), book.isAvailable());
+    }
+
+    private void set(int row, int id, String title, String author, boolean isAvailable) {
+        ids[row] = id;
+        titles[row] = title;
+        authorCodes[row] = authors.encode(author);
+        available.set(row, isAvailable);
+    }
+
+    public void remove(int row) {
+        int moved = size - row - 1;
+        System.arraycopy(ids, row + 1, ids, row, moved);
+        System.arraycopy(titles, row + 1, titles, row, moved);
+        System.arraycopy(authorCodes, row + 1, authorCodes, row, moved);
+        for (int i = row; i < size - 1; i++) {
+            available.set(i, available.get(i + 1));
+        }
+        size--;
+        titles[size] = null;
+        available.clear(size);
+    }
+
+    // Row holding the given id in a table in id order, or -1.
+    public int indexOf(int id) {
+        if (size == 0 || id < ids[0] || id > ids[size - 1]) {
+            return -1;
+        }
+        int row = Arrays.binarySearch(ids, 0, size, id);
+        return row >= 0 ? row : -1;
+    }
+
+    // Row holding the given id in a table sorted by something other than id, or -1.
+    public int find(int id) {
+        for (int row = 0; row < size; row++) {
+            if (ids[row] == id) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    // In a table in id order, the row holding the given id, or the row it would be inserted at to keep the ids in order.
+    public int insertionPoint(int id) {
+        int row = Arrays.binarySearch(ids, 0, size, id);
+        return row >= 0 ? row : -row - 1;
+    }
+}
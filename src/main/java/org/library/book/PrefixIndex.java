@@ -0,0 +1,144 @@
+package org.library.book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Distinct strings in case-insensitive order, each with the number of times it was added, answering prefix
+// lookups with a binary search. Values differing only in case share one entry, shown as first added. Readers
+// work on an immutable snapshot without locking; each change copies the arrays, so edits are best applied in
+// batches, as the dictionary does with each poll of the change feed.
+public class PrefixIndex {
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new int[0]);
+
+    // Up to limit values starting with the prefix, ignoring case, in order. An empty prefix matches nothing.
+    public List<String> complete(String prefix, int limit) {
+        if (prefix == null || prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Snapshot current = snapshot;
+        List<String> matches = new ArrayList<>(Math.min(limit, 16));
+        for (int i = current.lowerBound(prefix); i < current.values.length && matches.size() < limit; i++) {
+            String value = current.values[i];
+            if (!value.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            matches.add(value);
+        }
+        return matches;
+    }
+
+    public void add(String value) {
+        update(Collections.emptyList(), Collections.singletonList(value));
+    }
+
+    // Drops one occurrence; the value disappears with its last one.
+    public void remove(String value) {
+        update(Collections.singletonList(value), Collections.emptyList());
+    }
+
+    // Applies a batch of edits in one pass over the arrays, so a batch costs about as much as a single edit.
+    // Removing a value that is not there does nothing.
+    public synchronized void update(Collection<String> removed, Collection<String> added) {
+        TreeMap<String, int[]> delta = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String value : added) {
+            if (value != null && !value.isEmpty()) {
+                delta.computeIfAbsent(value, v -> new int[1])[0]++;
+            }
+        }
+        for (String value : removed) {
+            if (value != null && !value.isEmpty()) {
+                delta.computeIfAbsent(value, v -> new int[1])[0]--;
+            }
+        }
+        delta.values().removeIf(change -> change[0] == 0);
+        if (delta.isEmpty()) {
+            return;
+        }
+        Snapshot current = snapshot;
+        int length = current.values.length;
+        String[] values = new String[length + delta.size()];
+        int[] counts = new int[values.length];
+        int size = 0;
+        int from = 0;
+        for (Map.Entry<String, int[]> entry : delta.entrySet()) {
+            // The unchanged run before the edited value is copied as a block
+            int index = current.lowerBound(entry.getKey(), from);
+            System.arraycopy(current.values, from, values, size, index - from);
+            System.arraycopy(current.counts, from, counts, size, index - from);
+            size += index - from;
+            from = index;
+            int count = entry.getValue()[0];
+            String value = entry.getKey();
+            if (index < length && current.values[index].equalsIgnoreCase(value)) {
+                count += current.counts[index];
+                value = current.values[index];
+                from++;
+            }
+            if (count > 0) {
+                values[size] = value;
+                counts[size++] = count;
+            }
+        }
+        System.arraycopy(current.values, from, values, size, length - from);
+        System.arraycopy(current.counts, from, counts, size, length - from);
+        size += length - from;
+        snapshot = new Snapshot(Arrays.copyOf(values, size), Arrays.copyOf(counts, size));
+    }
+
+    // Replaces the contents in one step: sorts the values once instead of inserting them one by one.
+    public synchronized void replaceAll(Collection<String> all) {
+        String[] sorted = all.stream().filter(v -> v != null && !v.isEmpty()).toArray(String[]::new);
+        Arrays.sort(sorted, String.CASE_INSENSITIVE_ORDER);
+        String[] values = new String[sorted.length];
+        int[] counts = new int[sorted.length];
+        int size = 0;
+        for (String value : sorted) {
+            if (size > 0 && values[size - 1].equalsIgnoreCase(value)) {
+                counts[size - 1]++;
+            } else {
+                values[size] = value;
+                counts[size++] = 1;
+            }
+        }
+        snapshot = new Snapshot(Arrays.copyOf(values, size), Arrays.copyOf(counts, size));
+    }
+
+    // The number of distinct values.
+    public int size() {
+        return snapshot.values.length;
+    }
+
+    private static class Snapshot {
+        final String[] values;
+        final int[] counts;
+
+        Snapshot(String[] values, int[] counts) {
+            this.values = values;
+            this.counts = counts;
+        }
+
+        // The first index whose value is not before the key.
+        int lowerBound(String key) {
+            return lowerBound(key, 0);
+        }
+
+        int lowerBound(String key, int from) {
+            int low = from;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (String.CASE_INSENSITIVE_ORDER.compare(values[mid], key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
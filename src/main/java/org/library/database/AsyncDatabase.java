@@ -0,0 +1,41 @@
+package org.library.database;
+
+import org.library.RequestExecutor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+// Runs database work on the shared RequestExecutor so callers (in particular the Swing EDT) never block on JDBC.
+// Cancelling a returned future skips the work if it has not started yet and interrupts it otherwise.
+public class AsyncDatabase {
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface SqlTask<T> {
+        T call() throws SQLException;
+    }
+
+    // Borrows a pooled connection for the duration of the work.
+    public static <T> CompletableFuture<T> submit(SqlWork<T> work) {
+        return supply(() -> {
+            try (Connection conn = DatabaseManager.getConnection()) {
+                return work.run(conn);
+            }
+        });
+    }
+
+    // Times out after library.executor.timeoutMillis.
+    public static <T> CompletableFuture<T> supply(SqlTask<T> task) {
+        return RequestExecutor.shared().submit(task::call);
+    }
+
+    // A timeout of 0 lets the work run as long as it needs, e.g. for migrations.
+    public static <T> CompletableFuture<T> supply(SqlTask<T> task, long timeoutMillis) {
+        return RequestExecutor.shared().submit(task::call, timeoutMillis);
+    }
+}
@@ -0,0 +1,9 @@
+package org.library.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface ConnectionFactory {
+    Connection create() throws SQLException;
+}
@@ -0,0 +1,302 @@
+package org.library.database;
+
+import org.library.metrics.Metrics;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionPool implements AutoCloseable {
+    private final ConnectionFactory factory;
+    private final PoolConfig config;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    // Null when eviction is disabled
+    private final ScheduledExecutorService evictor;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder destroyedCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    private volatile boolean closed;
+
+    public ConnectionPool(ConnectionFactory factory, PoolConfig config) {
+        if (config.getMaxSize() < 1 || config.getMinSize() < 0 || config.getMinSize() > config.getMaxSize()) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + config.getMinSize() + ", max=" + config.getMaxSize());
+        }
+        this.factory = factory;
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+
+        long interval = config.getEvictionIntervalMillis();
+        if (interval > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "library-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                Metrics.increment("errors.pool.timeout");
+                throw new SQLTransientConnectionException("Timed out after " + config.getBorrowTimeoutMillis()
+                        + "ms waiting for a database connection (" + metrics() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled = takeIdleOrCreate();
+            active.incrementAndGet();
+            recordWait(System.nanoTime() - start);
+            return pooled.lease(start);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Opens connections until at least minSize are idle or in use. Each one is opened under a permit, like a
+    // borrow, so a refill racing with borrowers cannot take the pool past maxSize; when every permit is in use the
+    // pool is busy enough and nothing is opened.
+    public void fill() throws SQLException {
+        while (!closed && permits.tryAcquire()) {
+            try {
+                if (active.get() + idle.size() >= config.getMinSize()) {
+                    return;
+                }
+                idle.offerLast(create());
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    public PoolMetrics metrics() {
+        return new PoolMetrics(active.get(), idle.size(), permits.getQueueLength(),
+                borrowCount.sum(), timeoutCount.sum(), createdCount.sum(), destroyedCount.sum(),
+                totalWaitNanos.sum(), maxWaitNanos.get(), statementHits.sum(), statementMisses.sum());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && active.get() + idle.size() > config.getMinSize()) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsed >= config.getIdleTimeoutMillis() && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+        try {
+            fill();
+        } catch (SQLException e) {
+            Metrics.error("errors.pool.fill", e);
+        }
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        // Most recently returned first, so the warmest connections stay busy and the rest can age out.
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isValid(pooled.connection)) {
+                return pooled;
+            }
+            destroy(pooled);
+        }
+        return create();
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        PooledConnection pooled = new PooledConnection(factory.create());
+        createdCount.increment();
+        return pooled;
+    }
+
+    private void destroy(PooledConnection pooled) {
+        destroyedCount.increment();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            // The connection is being discarded anyway.
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (closed || pooled.connection.isClosed() || !reset(pooled.connection)) {
+                destroy(pooled);
+            } else {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean reset(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void recordWait(long nanos) {
+        Metrics.record("pool.acquire", nanos);
+        borrowCount.increment();
+        totalWaitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private class PooledConnection {
+        private final Connection connection;
+        // Null when statement caching is disabled
+        private final StatementCache statements;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = config.getStatementCacheSize() > 0
+                    ? new StatementCache(connection, config.getStatementCacheSize(), statementHits, statementMisses)
+                    : null;
+        }
+
+        // requestedAt is when the caller asked for the connection, so time spent on the EDT includes the wait.
+        Connection lease(long requestedAt) {
+            long onEdtSince = Metrics.isEnabled() && EventQueue.isDispatchThread() ? requestedAt : 0;
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new LeaseHandler(this, onEdtSince));
+        }
+    }
+
+    // Hands out the physical connection until close(), which returns it to the pool instead of closing it.
+    // With metrics enabled, statements are wrapped to be timed (see QueryMetrics), and a lease taken on the
+    // Swing event thread records how long it held that thread up as "edt.database".
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        // System.nanoTime() when an EDT caller asked for the connection, or 0
+        private final long onEdtSince;
+        private boolean returned;
+
+        LeaseHandler(PooledConnection pooled, long onEdtSince) {
+            this.pooled = pooled;
+            this.onEdtSince = onEdtSince;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                        if (onEdtSince != 0) {
+                            Metrics.record("edt.database", System.nanoTime() - onEdtSince);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.connection + "]";
+                default:
+                    if (returned) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    Object result = null;
+                    boolean prepare = method.getName().equals("prepareStatement");
+                    if (pooled.statements != null && prepare) {
+                        Class<?>[] types = method.getParameterTypes();
+                        if (types.length == 1) {
+                            result = pooled.statements.prepare((Connection) proxy, (String) args[0], Statement.NO_GENERATED_KEYS);
+                        } else if (types.length == 2 && types[1] == int.class) {
+                            result = pooled.statements.prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+                        }
+                    }
+                    if (result == null) {
+                        try {
+                            result = method.invoke(pooled.connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                    if (Metrics.isEnabled()) {
+                        if (prepare) {
+                            result = QueryMetrics.wrap((Statement) result, PreparedStatement.class, (String) args[0]);
+                        } else if (method.getName().equals("createStatement")) {
+                            result = QueryMetrics.wrap((Statement) result, Statement.class, null);
+                        }
+                    }
+                    return result;
+            }
+        }
+    }
+}
@@ -1,15 +1,92 @@
 package org.library.database;
 
+import org.library.metrics.Metrics;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DatabaseManager {
-    private static final String URL = "jdbc:mysql://localhost:3306/library_db";
-    private static final String USER = "root";
-    private static final String PASSWORD = "";
+    static {
+        LibraryProperties.load();
+        Metrics.gauge("pool.active", () -> currentMetrics().getActive());
+        Metrics.gauge("pool.idle", () -> currentMetrics().getIdle());
+        Metrics.gauge("pool.waiting", () -> currentMetrics().getWaiting());
+        Metrics.gauge("pool.statementCache.hits", () -> currentMetrics().getStatementHits());
+        Metrics.gauge("pool.statementCache.misses", () -> currentMetrics().getStatementMisses());
+    }
+
+    private static StorageBackend backend;
+    private static ConnectionPool pool;
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return getPool().getConnection();
+    }
+
+    // Runs the work as one transaction on a pooled connection, rolling back if it throws.
+    public static <T> T inTransaction(AsyncDatabase.SqlWork<T> work) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                T result = work.run(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                Metrics.increment("errors.transaction");
+                throw e;
+            }
+        } finally {
+            Metrics.record("transaction", System.nanoTime() - start);
+        }
+    }
+
+    // Brings the schema up to date with the backend's migration scripts and returns how many were applied.
+    // -Dlibrary.db.migrate=false leaves a database that is managed elsewhere untouched.
+    public static int migrate() throws SQLException {
+        if (!Boolean.parseBoolean(System.getProperty("library.db.migrate", "true"))) {
+            return 0;
+        }
+        try (Connection conn = getConnection()) {
+            return new MigrationRunner(getBackend().getMigrationLocation()).migrate(conn);
+        }
+    }
+
+    // The backend named by library.storage: "mysql" (the default) or "embedded".
+    public static synchronized StorageBackend getBackend() {
+        if (backend == null) {
+            backend = StorageBackend.forName(System.getProperty("library.storage", "mysql"));
+        }
+        return backend;
+    }
+
+    public static synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            pool = new ConnectionPool(getBackend().connectionFactory(), PoolConfig.fromSystemProperties());
+        }
+        return pool;
+    }
+
+    // Replaces the shared pool, e.g. with one backed by an in-process database.
+    public static synchronized void setPool(ConnectionPool newPool) {
+        if (pool != null && pool != newPool) {
+            pool.close();
+        }
+        pool = newPool;
+    }
+
+    private static PoolMetrics currentMetrics() {
+        ConnectionPool current;
+        synchronized (DatabaseManager.class) {
+            current = pool;
+        }
+        return current != null ? current.metrics() : new PoolMetrics(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
     }
 }
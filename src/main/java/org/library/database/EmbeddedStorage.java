@@ -0,0 +1,40 @@
+package org.library.database;
+
+import java.io.File;
+import java.sql.DriverManager;
+
+// An H2 database in a local file, running inside the application: no server to install, and it opens in
+// milliseconds. Meant for a single branch on one machine; library.embedded.shared=true lets several
+// processes on that machine open the same file.
+public class EmbeddedStorage implements StorageBackend {
+
+    @Override
+    public String getName() {
+        return "embedded";
+    }
+
+    @Override
+    public ConnectionFactory connectionFactory() {
+        String path = new File(System.getProperty("library.embedded.path", "data/library")).getAbsolutePath();
+        // IGNORECASE matches MySQL's default case-insensitive collation for searches and unique usernames
+        String url = "jdbc:h2:file:" + path + ";MODE=MySQL;IGNORECASE=TRUE"
+                + (Boolean.parseBoolean(System.getProperty("library.embedded.shared", "false")) ? ";AUTO_SERVER=TRUE" : "");
+        return () -> DriverManager.getConnection(url, "sa", "");
+    }
+
+    @Override
+    public String getMigrationLocation() {
+        return "db/h2";
+    }
+
+    @Override
+    public boolean supportsFullText() {
+        return false;
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        // H2 rejects negative fetch sizes; in-process results are read lazily anyway
+        return 0;
+    }
+}
@@ -0,0 +1,45 @@
+package org.library.database;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+// External configuration. Settings are read as library.* system properties throughout the application;
+// this copies the entries of a properties file (library.properties in the working directory, or the file
+// named by -Dlibrary.config) into the system properties, so the file can hold any of them while -D
+// options on the command line still take precedence. For example:
+//
+//   library.storage=embedded
+//   library.embedded.path=/var/lib/library/library
+//
+// or library.storage=mysql with library.db.url, library.db.user and library.db.password.
+public final class LibraryProperties {
+    private static boolean loaded;
+
+    private LibraryProperties() {
+    }
+
+    public static synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File file = new File(System.getProperty("library.config", "library.properties"));
+        if (!file.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + file, e);
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (System.getProperty(name) == null) {
+                System.setProperty(name, properties.getProperty(name));
+            }
+        }
+    }
+}
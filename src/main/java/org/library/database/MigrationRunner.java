@@ -0,0 +1,179 @@
+package org.library.database;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Applies the versioned SQL scripts under a classpath location (e.g. db/mysql) that the database has not
+// seen yet. The scripts are listed in order in <location>/migrations.txt, since a directory inside a jar
+// cannot be listed portably; applied versions are recorded in schema_version.
+//
+// A query preceded by a "-- require empty: <message>" line is a precondition: if it returns any rows, the migration
+// stops before its next statement with the message and the first column of up to ten of the rows, so the data can
+// be fixed by hand before the next start.
+public class MigrationRunner {
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    private static final String REQUIRE_EMPTY = "-- require empty:";
+    private static final int REPORTED_ROWS = 10;
+
+    private final String location;
+
+    public MigrationRunner(String location) {
+        this.location = location;
+    }
+
+    // Highest applied version, or 0 for a database that has never been migrated.
+    public int currentVersion(Connection conn) throws SQLException {
+        createVersionTable(conn);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // Applies every pending script in version order and returns how many were applied. Each script is
+    // committed together with its schema_version row; note that MySQL commits DDL implicitly, so a script
+    // that fails halfway has to be fixed by hand before the next start.
+    public int migrate(Connection conn) throws SQLException {
+        int current = currentVersion(conn);
+        boolean autoCommit = conn.getAutoCommit();
+        int applied = 0;
+        try {
+            conn.setAutoCommit(false);
+            for (String script : scripts()) {
+                Matcher name = SCRIPT_NAME.matcher(script);
+                if (name.matches() && Integer.parseInt(name.group(1)) > current) {
+                    apply(conn, script, Integer.parseInt(name.group(1)), name.group(2).replace('_', ' '));
+                    applied++;
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return applied;
+    }
+
+    private void apply(Connection conn, String script, int version, String description) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : statements(read(script))) {
+                if (sql.startsWith(REQUIRE_EMPTY)) {
+                    requireEmpty(conn, script, sql);
+                    continue;
+                }
+                try {
+                    stmt.execute(sql);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Migration " + script + " failed at: " + sql, e.getSQLState(), e);
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+            stmt.setInt(1, version);
+            stmt.setString(2, description);
+            stmt.executeUpdate();
+        }
+        conn.commit();
+    }
+
+    private static void requireEmpty(Connection conn, String script, String check) throws SQLException {
+        int end = check.indexOf('\n');
+        String message = check.substring(REQUIRE_EMPTY.length(), end).trim();
+        List<String> found = new ArrayList<>();
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(check.substring(end + 1))) {
+            while (rs.next() && found.size() < REPORTED_ROWS) {
+                found.add(rs.getString(1));
+            }
+        }
+        if (!found.isEmpty()) {
+            conn.rollback();
+            throw new SQLException("Migration " + script + " cannot run: " + message + ": " + String.join(", ", found));
+        }
+    }
+
+    // Script names from the index, checked to be well-formed and in ascending version order.
+    List<String> scripts() throws SQLException {
+        List<String> scripts = new ArrayList<>();
+        int previous = 0;
+        for (String line : read("migrations.txt").split("\n")) {
+            String script = line.trim();
+            if (script.isEmpty() || script.startsWith("#")) {
+                continue;
+            }
+            Matcher name = SCRIPT_NAME.matcher(script);
+            if (!name.matches()) {
+                throw new SQLException("Not a migration script name: " + script);
+            }
+            int version = Integer.parseInt(name.group(1));
+            if (version <= previous) {
+                throw new SQLException("Migration " + script + " is out of order");
+            }
+            previous = version;
+            scripts.add(script);
+        }
+        return scripts;
+    }
+
+    // Splits a script at semicolons that end a line. Comment lines are dropped, except a require empty line, which
+    // starts the statement it precedes; the scripts do not contain semicolons inside string literals.
+    static List<String> statements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : script.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith(REQUIRE_EMPTY)) {
+                current.append(trimmed).append('\n');
+                continue;
+            }
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            if (trimmed.endsWith(";")) {
+                current.append(trimmed, 0, trimmed.length() - 1);
+                statements.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(trimmed).append('\n');
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    private String read(String name) throws SQLException {
+        String path = location + "/" + name;
+        InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(path);
+        if (in == null) {
+            throw new SQLException("Missing migration resource " + path);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            StringBuilder text = new StringBuilder();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                text.append(line).append('\n');
+            }
+            return text.toString();
+        } catch (IOException e) {
+            throw new SQLException("Could not read " + path, e);
+        }
+    }
+
+    private static void createVersionTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (version INT NOT NULL PRIMARY KEY, "
+                    + "description VARCHAR(200) NOT NULL, installed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.library.database;
+
+import java.sql.DriverManager;
+
+// A shared MySQL server, for libraries with several branches or desks on different machines.
+public class MySqlStorage implements StorageBackend {
+    // rewriteBatchedStatements turns JDBC batches into multi-row INSERTs instead of one round trip per row;
+    // useServerPrepStmts prepares on the server, so statements kept by the pool's cache are parsed only once
+    private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/library_db?rewriteBatchedStatements=true&useServerPrepStmts=true";
+
+    @Override
+    public String getName() {
+        return "mysql";
+    }
+
+    @Override
+    public ConnectionFactory connectionFactory() {
+        String url = System.getProperty("library.db.url", DEFAULT_URL);
+        String user = System.getProperty("library.db.user", "root");
+        String password = System.getProperty("library.db.password", "");
+        return () -> DriverManager.getConnection(url, user, password);
+    }
+
+    @Override
+    public String getMigrationLocation() {
+        return "db/mysql";
+    }
+
+    @Override
+    public boolean supportsFullText() {
+        return true;
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        // Connector/J streams row by row only for this value
+        return Integer.MIN_VALUE;
+    }
+}
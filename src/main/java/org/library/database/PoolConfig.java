@@ -0,0 +1,80 @@
+package org.library.database;
+
+public class PoolConfig {
+    private int minSize = 1;
+    private int maxSize = 8;
+    private long borrowTimeoutMillis = 5000;
+    private long idleTimeoutMillis = 5 * 60 * 1000;
+    private long evictionIntervalMillis = 30 * 1000;
+    private int validationTimeoutSeconds = 2;
+    // Prepared statements kept open per physical connection; 0 disables the cache.
+    private int statementCacheSize = 64;
+
+    public static PoolConfig fromSystemProperties() {
+        PoolConfig config = new PoolConfig();
+        config.setMinSize(Integer.getInteger("library.pool.minSize", config.getMinSize()));
+        config.setMaxSize(Integer.getInteger("library.pool.maxSize", config.getMaxSize()));
+        config.setBorrowTimeoutMillis(Long.getLong("library.pool.borrowTimeoutMillis", config.getBorrowTimeoutMillis()));
+        config.setIdleTimeoutMillis(Long.getLong("library.pool.idleTimeoutMillis", config.getIdleTimeoutMillis()));
+        config.setEvictionIntervalMillis(Long.getLong("library.pool.evictionIntervalMillis", config.getEvictionIntervalMillis()));
+        config.setValidationTimeoutSeconds(Integer.getInteger("library.pool.validationTimeoutSeconds", config.getValidationTimeoutSeconds()));
+        config.setStatementCacheSize(Integer.getInteger("library.pool.statementCacheSize", config.getStatementCacheSize()));
+        return config;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+}
@@ -0,0 +1,98 @@
+package org.library.database;
+
+import org.library.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Times the statements of pooled connections while Metrics is enabled. Each statement is classified by
+// verb and first table ("query.select.books", "query.update.loans"), which gives one latency histogram per
+// kind of query and an "errors.<type>" counter of failures. Result sets are not wrapped, since a proxy
+// call per column read costs more than the query on a local database; rows are counted by the DAOs.
+final class QueryMetrics {
+    private static final Pattern TABLE = Pattern.compile("\\b(?:from|into|update)\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+    // Application SQL is a fixed set of strings; statements with inlined values are classified uncached
+    private static final int MAX_CACHED_TYPES = 1000;
+    private static final ConcurrentHashMap<String, String> TYPES = new ConcurrentHashMap<>();
+
+    private QueryMetrics() {
+    }
+
+    // Wraps a statement as the given interface. The SQL is null for plain statements, whose execute
+    // methods carry it instead.
+    static Statement wrap(Statement statement, Class<? extends Statement> type, String sql) {
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new StatementHandler(statement, sql));
+    }
+
+    static String typeOf(String sql) {
+        String type = TYPES.get(sql);
+        if (type == null) {
+            type = classify(sql);
+            if (TYPES.size() < MAX_CACHED_TYPES) {
+                TYPES.put(sql, type);
+            }
+        }
+        return type;
+    }
+
+    private static String classify(String sql) {
+        String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        String verb = end == 0 ? "other" : trimmed.substring(0, end).toLowerCase(Locale.ROOT);
+        Matcher table = TABLE.matcher(trimmed);
+        return "query." + verb + (table.find() ? "." + table.group(1).toLowerCase(Locale.ROOT) : "");
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String sql;
+
+        StatementHandler(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (!name.startsWith("execute")) {
+                return call(statement, method, args);
+            }
+            String type = typeOf(sql != null ? sql
+                    : args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : "batch");
+            long start = System.nanoTime();
+            try {
+                return call(statement, method, args);
+            } catch (SQLException e) {
+                Metrics.increment("errors." + type.substring(6));
+                throw e;
+            } finally {
+                Metrics.record(type, System.nanoTime() - start);
+            }
+        }
+    }
+}
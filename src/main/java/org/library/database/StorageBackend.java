@@ -0,0 +1,33 @@
+package org.library.database;
+
+import java.util.ServiceLoader;
+
+// A database the application can run on. Implementations are registered in
+// META-INF/services/org.library.database.StorageBackend and picked by name with library.storage;
+// each reads its connection settings from library.* properties (see LibraryProperties).
+public interface StorageBackend {
+
+    // The value of library.storage that selects this backend.
+    String getName();
+
+    ConnectionFactory connectionFactory();
+
+    // Classpath location of the migration scripts for this database's SQL dialect.
+    String getMigrationLocation();
+
+    // Whether the books table has the FULLTEXT index used for substring search.
+    boolean supportsFullText();
+
+    // The fetch size that makes the driver stream a large result instead of reading it all into memory,
+    // or 0 to leave the driver's default.
+    int getStreamingFetchSize();
+
+    static StorageBackend forName(String name) {
+        for (StorageBackend backend : ServiceLoader.load(StorageBackend.class)) {
+            if (backend.getName().equalsIgnoreCase(name)) {
+                return backend;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage backend: " + name);
+    }
+}
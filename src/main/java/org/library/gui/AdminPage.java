@@ -1,19 +1,19 @@
 package org.library.gui;
 
 import org.library.book.Book;
-import org.library.database.DatabaseManager;
+import org.library.book.BookChangeFeed;
+import org.library.book.BookRepository;
+import org.library.database.AsyncDatabase;
+import org.library.loan.CirculationService;
+import org.library.user.Session;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class AdminPage extends JFrame {
     private JPanel panel;
@@ -21,22 +21,35 @@ public class AdminPage extends JFrame {
     private JButton addButton;
     private JButton deleteButton;
     private JButton updateButton;
+    private JButton availabilityButton;
+    private JButton renameAuthorButton;
+    private JButton importButton;
+    private JButton exportButton;
+    private JButton overdueButton;
+    private JButton diagnosticsButton;
     private JButton logoutButton;
 
-    private List<Book> books;
+    private static final int SUGGESTIONS = 8;
 
-    public AdminPage() {
-        setTitle("Library App - Admin Page");
+    private final BookRepository books = BookRepository.shared();
+    private final BookChangeFeed changes = BookChangeFeed.shared();
+    private BookTableModel bookModel;
+    // Edits from this and other windows or clients arrive through the change feed
+    private final BookChangeFeed.Listener changeListener = batch -> SwingUtilities.invokeLater(() -> bookModel.booksChanged(batch));
+    // Reloads are only needed once the local rows are known to be stale; a burst of those is merged into one.
+    private final Debouncer refresher = new Debouncer(150, this::refreshTable);
+
+    public AdminPage(Session session) {
+        setTitle("Library App - Admin Page (" + session.getUser().getUsername() + ")");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
-        setSize(600, 400);
+        setSize(800, 500);
 
         panel = new JPanel(new BorderLayout());
 
-        // Load books from database
-        loadBooks();
-
         // Create table to display books
         createTable();
+        refreshTable();
+        changes.addListener(changeListener);
 
         // Create buttons
         addButton = new JButton("Add Book");
@@ -52,15 +65,18 @@ public class AdminPage extends JFrame {
         deleteButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                // Delete selected book
-                int selectedRow = bookTable.getSelectedRow();
-                if (selectedRow != -1) {
-                    int bookId = books.get(selectedRow).getId();
-                    deleteBook(bookId);
-                    loadBooks(); // Refresh books list from database
-                    refreshTable(); // Refresh table with updated data
-                } else {
-                    JOptionPane.showMessageDialog(panel, "Select a book to delete.", "Error", JOptionPane.ERROR_MESSAGE);
+                // Delete selected books
+                List<Book> selectedBooks = getSelectedBooks("delete");
+                if (selectedBooks == null) {
+                    return;
+                }
+                if (selectedBooks.size() == 1) {
+                    int bookId = selectedBooks.get(0).getId();
+                    UiTasks.run(panel, deleteBook(bookId), deleted -> changes.pollNow());
+                } else if (JOptionPane.showConfirmDialog(panel, "Delete " + selectedBooks.size() + " books?", "Delete Books",
+                        JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.OK_OPTION) {
+                    int[] ids = idsOf(selectedBooks);
+                    UiTasks.run(panel, AsyncDatabase.supply(() -> books.deleteAll(ids)), deleted -> changes.pollNow());
                 }
             }
         });
@@ -70,16 +86,40 @@ public class AdminPage extends JFrame {
             @Override
             public void actionPerformed(ActionEvent e) {
                 // Open dialog to update book
-                int selectedRow = bookTable.getSelectedRow();
-                if (selectedRow != -1) {
-                    Book selectedBook = books.get(selectedRow);
-                    showUpdateBookDialog(selectedBook);
+                List<Book> selectedBooks = getSelectedBooks("update");
+                if (selectedBooks == null) {
+                    return;
+                }
+                if (selectedBooks.size() == 1) {
+                    showUpdateBookDialog(selectedBooks.get(0));
                 } else {
-                    JOptionPane.showMessageDialog(panel, "Select a book to update.", "Error", JOptionPane.ERROR_MESSAGE);
+                    JOptionPane.showMessageDialog(panel, "Select a single book to update.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
             }
         });
 
+        // Bulk edits of the selected books, each one transaction
+        availabilityButton = new JButton("Set Availability");
+        availabilityButton.addActionListener(e -> showAvailabilityDialog());
+        renameAuthorButton = new JButton("Rename Author");
+        renameAuthorButton.addActionListener(e -> showRenameAuthorDialog());
+
+        // Bulk transfer through CSV files
+        CsvTransfer csvTransfer = new CsvTransfer(panel, books);
+        importButton = new JButton("Import CSV");
+        importButton.addActionListener(e -> csvTransfer.importBooks(changes::pollNow));
+        exportButton = new JButton("Export CSV");
+        exportButton.addActionListener(e -> csvTransfer.exportBooks());
+
+        // Overdue loans across all users
+        LoanReports loanReports = new LoanReports(panel, new CirculationService());
+        overdueButton = new JButton("Overdue Loans");
+        overdueButton.addActionListener(e -> loanReports.showOverdue());
+
+        // Query latencies, pool state and error counts
+        diagnosticsButton = new JButton("Diagnostics");
+        diagnosticsButton.addActionListener(e -> new DiagnosticsWindow().setVisible(true));
+
         // Create logout button
         logoutButton = new JButton("Logout");
         logoutButton.addActionListener(new ActionListener() {
@@ -94,68 +134,67 @@ public class AdminPage extends JFrame {
         buttonPanel.add(addButton);
         buttonPanel.add(deleteButton);
         buttonPanel.add(updateButton);
+        buttonPanel.add(availabilityButton);
+        buttonPanel.add(renameAuthorButton);
+        buttonPanel.add(importButton);
+        buttonPanel.add(exportButton);
+        buttonPanel.add(overdueButton);
+        buttonPanel.add(diagnosticsButton);
         buttonPanel.add(logoutButton);
 
+        BookSearchPanel searchPanel = new BookSearchPanel(bookModel::setQuery);
+        AutoCompletion.attach(searchPanel.getSearchField(), text -> books.getDictionary().complete(text, SUGGESTIONS));
+        panel.add(searchPanel, BorderLayout.NORTH);
         panel.add(new JScrollPane(bookTable), BorderLayout.CENTER);
         panel.add(buttonPanel, BorderLayout.SOUTH);
 
         add(panel);
     }
 
-    private void loadBooks() {
-        books = new ArrayList<>();
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM books")) {
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String title = rs.getString("title");
-                String author = rs.getString("author");
-                boolean available = rs.getBoolean("available");
-                Book book = new Book(id, title, author, available);
-                books.add(book);
+    private void createTable() {
+        bookModel = new BookTableModel(books);
+        bookTable = new JTable(bookModel);
+        bookTable.setRowSorter(new BookRowSorter(bookModel));
+        bookTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+    }
+
+    // The selected books, or null after telling the user why there are none to act on. Rows the table has not
+    // loaded yet (e.g. after Ctrl+A on a large catalogue) have no book to act on until they are scrolled into view.
+    private List<Book> getSelectedBooks(String action) {
+        int[] rows = bookTable.getSelectedRows();
+        if (rows.length == 0) {
+            JOptionPane.showMessageDialog(panel, "Select the books to " + action + ".", "Error", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+        List<Book> selected = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            Book book = bookModel.getBookAt(row);
+            if (book == null) {
+                JOptionPane.showMessageDialog(panel, "Some selected books are still loading. Scroll through the selection and try again.",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return null;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            selected.add(book);
         }
+        return selected;
     }
 
-    private void createTable() {
-        String[] columnNames = {"ID", "Title", "Author", "Available"};
-        Object[][] data = new Object[books.size()][4];
-
-        for (int i = 0; i < books.size(); i++) {
-            Book book = books.get(i);
-            data[i][0] = book.getId();
-            data[i][1] = book.getTitle();
-            data[i][2] = book.getAuthor();
-            data[i][3] = book.isAvailable() ? "Yes" : "No";
+    private static int[] idsOf(List<Book> selected) {
+        int[] ids = new int[selected.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = selected.get(i).getId();
         }
-
-        DefaultTableModel model = new DefaultTableModel(data, columnNames);
-        bookTable = new JTable(model);
-        bookTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        return ids;
     }
 
     private void refreshTable() {
-        String[] columnNames = {"ID", "Title", "Author", "Available"};
-        Object[][] data = new Object[books.size()][4];
-
-        for (int i = 0; i < books.size(); i++) {
-            Book book = books.get(i);
-            data[i][0] = book.getId();
-            data[i][1] = book.getTitle();
-            data[i][2] = book.getAuthor();
-            data[i][3] = book.isAvailable() ? "Yes" : "No";
-        }
-
-        DefaultTableModel model = new DefaultTableModel(data, columnNames);
-        bookTable.setModel(model);
+        bookModel.reload();
     }
 
     private void showAddBookDialog() {
         JTextField titleField = new JTextField();
         JTextField authorField = new JTextField();
+        attachCompletions(titleField, authorField);
 
         JPanel dialogPanel = new JPanel(new GridLayout(2, 2));
         dialogPanel.add(new JLabel("Title:"));
@@ -167,36 +206,28 @@ public class AdminPage extends JFrame {
         if (result == JOptionPane.OK_OPTION) {
             String title = titleField.getText();
             String author = authorField.getText();
-            addBook(title, author);
-            loadBooks(); // Refresh books list from database
-            refreshTable(); // Refresh table with updated data
+            UiTasks.run(panel, addBook(title, author), added -> changes.pollNow());
         }
     }
 
-    private void addBook(String title, String author) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("INSERT INTO books (title, author, available) VALUES (?, ?, true)")) {
-            stmt.setString(1, title);
-            stmt.setString(2, author);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    // Existing titles and authors, so new books reuse the spelling already in the catalogue.
+    private void attachCompletions(JTextField titleField, JTextField authorField) {
+        AutoCompletion.attach(titleField, text -> books.getDictionary().completeTitles(text, SUGGESTIONS));
+        AutoCompletion.attach(authorField, text -> books.getDictionary().completeAuthors(text, SUGGESTIONS));
     }
 
-    private void deleteBook(int bookId) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("DELETE FROM books WHERE id = ?")) {
-            stmt.setInt(1, bookId);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    private CompletableFuture<Book> addBook(String title, String author) {
+        return AsyncDatabase.supply(() -> books.add(title, author));
+    }
+
+    private CompletableFuture<Boolean> deleteBook(int bookId) {
+        return AsyncDatabase.supply(() -> books.delete(bookId));
     }
 
     private void showUpdateBookDialog(Book book) {
         JTextField titleField = new JTextField(book.getTitle());
         JTextField authorField = new JTextField(book.getAuthor());
+        attachCompletions(titleField, authorField);
 
         JPanel dialogPanel = new JPanel(new GridLayout(2, 2));
         dialogPanel.add(new JLabel("Title:"));
@@ -208,22 +239,72 @@ public class AdminPage extends JFrame {
         if (result == JOptionPane.OK_OPTION) {
             String title = titleField.getText();
             String author = authorField.getText();
-            updateBook(book.getId(), title, author);
-            loadBooks(); // Refresh books list from database
-            refreshTable(); // Refresh table with updated data
+            Book updated = new Book(book.getId(), title, author, book.isAvailable());
+            UiTasks.run(panel, updateBook(updated), found -> {
+                if (found) {
+                    changes.pollNow();
+                } else {
+                    // The book was removed elsewhere in the meantime
+                    refresher.request();
+                }
+            });
+        }
+    }
+
+    private CompletableFuture<Boolean> updateBook(Book book) {
+        return AsyncDatabase.supply(() -> books.update(book));
+    }
+
+    private void showAvailabilityDialog() {
+        List<Book> selectedBooks = getSelectedBooks("change");
+        if (selectedBooks == null) {
+            return;
+        }
+        String[] options = {"Available", "Not Available", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(panel, "Set " + selectedBooks.size() + " books to:", "Set Availability",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (choice != 0 && choice != 1) {
+            return;
+        }
+        boolean available = choice == 0;
+        int[] ids = idsOf(selectedBooks);
+        UiTasks.run(panel, AsyncDatabase.supply(() -> books.setAvailable(ids, available)), changed -> {
+            changes.pollNow();
+            if (available && changed < countMatching(selectedBooks, false)) {
+                JOptionPane.showMessageDialog(panel, "Books that are on loan stay unavailable until they are returned.",
+                        "Set Availability", JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+    }
+
+    private static int countMatching(List<Book> selected, boolean available) {
+        int count = 0;
+        for (Book book : selected) {
+            if (book.isAvailable() == available) {
+                count++;
+            }
         }
+        return count;
     }
 
-    private void updateBook(int bookId, String title, String author) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("UPDATE books SET title = ?, author = ? WHERE id = ?")) {
-            stmt.setString(1, title);
-            stmt.setString(2, author);
-            stmt.setInt(3, bookId);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+    private void showRenameAuthorDialog() {
+        List<Book> selectedBooks = getSelectedBooks("change");
+        if (selectedBooks == null) {
+            return;
         }
+        String author = (String) JOptionPane.showInputDialog(panel, "New author for " + selectedBooks.size() + " books:",
+                "Rename Author", JOptionPane.PLAIN_MESSAGE, null, null, selectedBooks.get(0).getAuthor());
+        if (author == null || author.trim().isEmpty()) {
+            return;
+        }
+        int[] ids = idsOf(selectedBooks);
+        UiTasks.run(panel, AsyncDatabase.supply(() -> books.renameAuthor(ids, author.trim())), renamed -> changes.pollNow());
+    }
+
+    @Override
+    public void dispose() {
+        changes.removeListener(changeListener);
+        super.dispose();
     }
 
     private void performLogout() {
@@ -237,8 +318,7 @@ public class AdminPage extends JFrame {
     }
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            new AdminPage().setVisible(true);
-        });
+        // An admin page needs a logged-in session
+        LoginPage.main(args);
     }
 }
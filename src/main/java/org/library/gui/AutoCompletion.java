@@ -0,0 +1,143 @@
+package org.library.gui;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.Function;
+
+// Suggests completions in a list below a text field as the user types. Up and Down move through the list, Enter
+// or a click takes a suggestion and Escape closes the list. Lookups run on the EDT at every keystroke, so they
+// must be in-memory, like the BookDictionary.
+final class AutoCompletion {
+    private static final int VISIBLE_ROWS = 8;
+
+    private final JTextField field;
+    private final Function<String, List<String>> suggestions;
+    private final DefaultListModel<String> model = new DefaultListModel<>();
+    private final JList<String> list = new JList<>(model);
+    private final JPopupMenu popup = new JPopupMenu();
+    private boolean adjusting;
+
+    private AutoCompletion(JTextField field, Function<String, List<String>> suggestions) {
+        this.field = field;
+        this.suggestions = suggestions;
+
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = list.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    accept(model.get(index));
+                }
+            }
+        });
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.setBorder(null);
+        popup.setFocusable(false);
+        popup.add(scrollPane);
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        // Runs before the key bindings, so a consumed Enter or Escape does not also close a dialog
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) {
+                    return;
+                }
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        move(1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        move(-1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        if (list.getSelectedValue() != null) {
+                            accept(list.getSelectedValue());
+                            e.consume();
+                        }
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        popup.setVisible(false);
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        field.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                popup.setVisible(false);
+            }
+        });
+    }
+
+    static void attach(JTextField field, Function<String, List<String>> suggestions) {
+        new AutoCompletion(field, suggestions);
+    }
+
+    private void changed() {
+        if (!adjusting) {
+            // The document is locked while it notifies its listeners
+            SwingUtilities.invokeLater(this::update);
+        }
+    }
+
+    private void update() {
+        String text = field.getText();
+        List<String> matches = field.isShowing() && field.hasFocus() ? suggestions.apply(text) : null;
+        if (matches == null || matches.isEmpty() || (matches.size() == 1 && matches.get(0).equals(text))) {
+            popup.setVisible(false);
+            return;
+        }
+        model.clear();
+        matches.forEach(model::addElement);
+        list.clearSelection();
+        list.setVisibleRowCount(Math.min(matches.size(), VISIBLE_ROWS));
+        popup.setPopupSize(field.getWidth(), popup.getPreferredSize().height);
+        popup.show(field, 0, field.getHeight());
+    }
+
+    private void move(int delta) {
+        int index = Math.max(0, Math.min(model.size() - 1, list.getSelectedIndex() + delta));
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
+    }
+
+    private void accept(String value) {
+        adjusting = true;
+        try {
+            field.setText(value);
+        } finally {
+            adjusting = false;
+        }
+        popup.setVisible(false);
+    }
+}
@@ -0,0 +1,99 @@
+package org.library.gui;
+
+import org.library.book.BookQuery;
+
+import javax.swing.*;
+import java.util.Collections;
+import java.util.List;
+
+// Sortable column headers for a BookTableModel. Sorting is done by the database, which returns the pages in the
+// chosen order, so this sorter never reorders rows itself: view and model rows are the same, and a click on a
+// header only asks the model for another order and shows the sort arrow.
+class BookRowSorter extends RowSorter<BookTableModel> {
+    private final BookTableModel model;
+    private List<SortKey> sortKeys = Collections.emptyList();
+
+    BookRowSorter(BookTableModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public BookTableModel getModel() {
+        return model;
+    }
+
+    // Ascending on the first click, then alternating.
+    @Override
+    public void toggleSortOrder(int column) {
+        SortOrder order = SortOrder.ASCENDING;
+        if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column && sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) {
+            order = SortOrder.DESCENDING;
+        }
+        setSortKeys(Collections.singletonList(new SortKey(column, order)));
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        SortKey key = keys == null || keys.isEmpty() ? null : keys.get(0);
+        if (key != null && key.getSortOrder() == SortOrder.UNSORTED) {
+            key = null;
+        }
+        sortKeys = key == null ? Collections.emptyList() : Collections.singletonList(key);
+        if (key == null) {
+            model.sortBy(BookQuery.Sort.ID, false);
+        } else {
+            model.sortBy(BookTableModel.COLUMN_SORTS[key.getColumn()], key.getSortOrder() == SortOrder.DESCENDING);
+        }
+        fireSortOrderChanged();
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        return index;
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        return index;
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    // The rows arrive in order, so there is nothing to redo when they change.
+    @Override
+    public void modelStructureChanged() {
+    }
+
+    @Override
+    public void allRowsChanged() {
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+    }
+}
@@ -0,0 +1,64 @@
+package org.library.gui;
+
+import org.library.book.BookQuery;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.util.function.Consumer;
+
+// Search box with match mode and availability filter. Typing is debounced so only the settled query is run.
+public class BookSearchPanel extends JPanel {
+    private static final String[] MODES = {"Starts with", "Contains"};
+    private static final String[] AVAILABILITY = {"All books", "Available", "Borrowed"};
+
+    private final JTextField searchField = new JTextField(20);
+    private final JComboBox<String> modeComboBox = new JComboBox<>(MODES);
+    private final JComboBox<String> availabilityComboBox = new JComboBox<>(AVAILABILITY);
+
+    public BookSearchPanel(Consumer<BookQuery> onSearch) {
+        super(new FlowLayout(FlowLayout.LEFT));
+
+        Debouncer debouncer = new Debouncer(250, () -> onSearch.accept(getQuery()));
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                debouncer.request();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                debouncer.request();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                debouncer.request();
+            }
+        });
+        // Enter and the filters apply immediately
+        searchField.addActionListener(e -> {
+            debouncer.cancel();
+            onSearch.accept(getQuery());
+        });
+        modeComboBox.addActionListener(e -> onSearch.accept(getQuery()));
+        availabilityComboBox.addActionListener(e -> onSearch.accept(getQuery()));
+
+        add(new JLabel("Search:"));
+        add(searchField);
+        add(modeComboBox);
+        add(availabilityComboBox);
+    }
+
+    // For attaching completions.
+    public JTextField getSearchField() {
+        return searchField;
+    }
+
+    public BookQuery getQuery() {
+        BookQuery.Mode mode = BookQuery.Mode.values()[modeComboBox.getSelectedIndex()];
+        BookQuery.Availability availability = BookQuery.Availability.values()[availabilityComboBox.getSelectedIndex()];
+        return new BookQuery(searchField.getText(), mode, availability);
+    }
+}
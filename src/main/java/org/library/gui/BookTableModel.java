@@ -0,0 +1,475 @@
+package org.library.gui;
+
+import org.library.book.Book;
+import org.library.book.BookChange;
+import org.library.book.BookPageSource;
+import org.library.book.BookQuery;
+import org.library.book.BookTable;
+import org.library.book.StringDictionary;
+import org.library.database.AsyncDatabase;
+import org.library.metrics.Metrics;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Table model that loads the catalogue in keyset-paged windows as rows are rendered and keeps only
+// a bounded number of pages in memory. Pages are stored as columnar BookTables sharing one author dictionary,
+// and cells are read straight from them. All state is confined to the EDT; fetching happens on AsyncDatabase.
+public class BookTableModel extends AbstractTableModel {
+    private static final String[] COLUMN_NAMES = {"ID", "Title", "Author", "Available"};
+    static final BookQuery.Sort[] COLUMN_SORTS = {BookQuery.Sort.ID, BookQuery.Sort.TITLE, BookQuery.Sort.AUTHOR, BookQuery.Sort.AVAILABLE};
+    private static final int DEFAULT_PAGE_SIZE = 200;
+
+    private final BookPageSource source;
+    private final int pageSize;
+    private final Map<Integer, BookTable> pages;
+    // Last row of page p - 1, i.e. the keyset start of page p.
+    private final Map<Integer, Book> pageKeys = new HashMap<>();
+    private final Map<Integer, CompletableFuture<List<Book>>> pending = new HashMap<>();
+    private CompletableFuture<Integer> pendingCount;
+    private StringDictionary authors = new StringDictionary();
+
+    private BookQuery query = BookQuery.ALL;
+    private int rowCount;
+    private boolean countKnown;
+    private int generation;
+
+    public BookTableModel(BookPageSource source) {
+        this(source, DEFAULT_PAGE_SIZE, 32);
+    }
+
+    // Runs the count and first-page queries a new unfiltered model starts with, so a caching source
+    // such as BookRepository can answer them from memory when the first window opens.
+    public static void preload(BookPageSource source) throws SQLException {
+        source.count(BookQuery.ALL);
+        source.fetchPage(BookQuery.ALL, null, DEFAULT_PAGE_SIZE);
+    }
+
+    public BookTableModel(BookPageSource source, int pageSize, int maxPages) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.pages = new LinkedHashMap<Integer, BookTable>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BookTable> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    public BookQuery getQuery() {
+        return query;
+    }
+
+    // Applies a new filter; the rows stay in the order chosen with sortBy.
+    public void setQuery(BookQuery query) {
+        BookQuery sorted = query.sortedBy(this.query.getSort(), this.query.isDescending());
+        if (!sorted.equals(this.query)) {
+            this.query = sorted;
+            reload();
+        }
+    }
+
+    // Lists the same matches in another order. The database walks the index of the sort column from the start,
+    // so only the pages on screen are fetched, and the known row count is kept instead of counting again.
+    public void sortBy(BookQuery.Sort sort, boolean descending) {
+        BookQuery sorted = query.sortedBy(sort, descending);
+        if (sorted == query) {
+            return;
+        }
+        query = sorted;
+        if (!countKnown) {
+            reload();
+            return;
+        }
+        generation++;
+        discardPages();
+        fireTableDataChanged();
+        requestPage(0, true, true);
+    }
+
+    // Discards all cached pages and re-counts the matching books; rows are fetched again as they are displayed.
+    // The first page is requested alongside the count, so it can be shown before a slow count finishes.
+    public void reload() {
+        int current = ++generation;
+        BookQuery counted = query;
+        countKnown = false;
+        discardPages();
+        if (pendingCount != null) {
+            pendingCount.cancel(true);
+        }
+        pendingCount = AsyncDatabase.supply(() -> source.count(counted));
+        pendingCount.whenComplete((count, error) -> SwingUtilities.invokeLater(() -> {
+            if (current != generation) {
+                return;
+            }
+            pendingCount = null;
+            if (error != null) {
+                Metrics.error("errors.tableModel", error);
+                return;
+            }
+            rowCount = count;
+            countKnown = true;
+            fireTableDataChanged();
+            // A first page that arrived before the count could not tell whether a second page exists
+            if (pages.containsKey(0)) {
+                requestPage(1, false, false);
+            }
+        }));
+        requestPage(0, true, true);
+    }
+
+    private void discardPages() {
+        pages.clear();
+        pageKeys.clear();
+        // Start a fresh dictionary so authors of discarded pages do not accumulate
+        authors = new StringDictionary();
+        pending.values().forEach(page -> page.cancel(true));
+        pending.clear();
+    }
+
+    public void bookInserted(Book book) {
+        if (query.matches(book) && !insertBook(book)) {
+            reload();
+        }
+    }
+
+    // Returns false if the book's position falls into a part of the result that is not loaded.
+    private boolean insertBook(Book book) {
+        if (!query.isIdOrder()) {
+            int position = insertionRow(book);
+            if (position != -1) {
+                insertRow(position, book);
+            }
+            return position != -1;
+        }
+        // New books get the highest id, so they are appended after the last row.
+        int row = rowCount;
+        BookTable tail = pages.get(row / pageSize);
+        if (tail != null) {
+            tail.add(book);
+        }
+        rowCount++;
+        fireTableRowsInserted(row, row);
+        return true;
+    }
+
+    public void bookUpdated(Book book) {
+        int row = rowOf(book.getId());
+        if (row != -1 && !query.matches(book)) {
+            // No longer part of the current search
+            removeRow(row);
+        } else if (row != -1 && !replaceRow(row, book)) {
+            reload();
+        }
+    }
+
+    // Updates the row in place while it still sorts between its neighbours, and otherwise moves it. Returns false
+    // if it moved into a part of the result that is not loaded.
+    private boolean replaceRow(int row, Book book) {
+        Book previous = row > 0 ? loadedBook(row - 1) : null;
+        Book next = row + 1 < rowCount ? loadedBook(row + 1) : null;
+        boolean inOrder = query.getSort() == BookQuery.Sort.ID
+                || (row == 0 || previous != null && query.compare(previous, book) <= 0)
+                && (row + 1 >= rowCount || next != null && query.compare(book, next) <= 0);
+        if (inOrder) {
+            pages.get(row / pageSize).set(row % pageSize, book);
+            fireTableRowsUpdated(row, row);
+            return true;
+        }
+        removeRow(row);
+        int position = insertionRow(book);
+        if (position != -1) {
+            insertRow(position, book);
+        }
+        return position != -1;
+    }
+
+    private Book loadedBook(int row) {
+        BookTable page = pages.get(row / pageSize);
+        return page != null && row % pageSize < page.size() ? page.getBook(row % pageSize) : null;
+    }
+
+    public void bookRemoved(int bookId) {
+        int row = rowOf(bookId);
+        if (row == -1) {
+            // Position unknown without the page that held it, so the local state can no longer be trusted.
+            reload();
+        } else {
+            removeRow(row);
+        }
+    }
+
+    // Applies a poll of the change feed. Changed rows that are loaded are updated in place, and books that join
+    // or leave the current result are inserted or removed where their position is known. Only when a change
+    // falls into a part of the result that is not loaded and may affect the row count is the model reloaded. Under
+    // an order other than by id that also holds for edits of rows that are not loaded, which may move them on screen.
+    public void booksChanged(List<BookChange> changes) {
+        if (changes.size() > pageSize) {
+            // A bulk change such as an import: cheaper to start over than to apply row by row
+            reload();
+            return;
+        }
+        boolean stale = false;
+        for (BookChange change : changes) {
+            Book book = change.getBook();
+            boolean matches = book != null && query.matches(book);
+            int row = rowOf(change.getBookId());
+            if (row != -1) {
+                if (!matches) {
+                    removeRow(row);
+                } else if (!replaceRow(row, book)) {
+                    stale = true;
+                }
+            } else if (change.getType() == BookChange.Type.INSERT) {
+                if (matches && !insertBook(book)) {
+                    stale = true;
+                }
+            } else if (query.getSort() != BookQuery.Sort.ID) {
+                stale = true;
+            } else if (book == null || query.isFiltered()) {
+                // Membership may have changed; an edit under the unfiltered query never changes it
+                int position = insertionRow(book != null ? book : new Book(change.getBookId(), null, null, false));
+                if (position == -1) {
+                    stale = true;
+                } else if (matches) {
+                    insertRow(position, book);
+                }
+            }
+        }
+        if (stale) {
+            reload();
+        }
+    }
+
+    // Inserts into the cached page and carries each page's overflow row into the next one while that is cached,
+    // so the rows around the change stay loaded.
+    private void insertRow(int row, Book book) {
+        int page = row / pageSize;
+        BookTable table = pages.get(page);
+        if (table != null) {
+            table.insert(row % pageSize, book);
+            while (table.size() > pageSize) {
+                Book carried = table.getBook(pageSize);
+                table.remove(pageSize);
+                pageKeys.put(page + 1, table.getBook(pageSize - 1));
+                BookTable next = pages.get(page + 1);
+                if (next == null) {
+                    dropPagesFrom(page + 1);
+                    break;
+                }
+                next.insert(0, carried);
+                table = next;
+                page++;
+            }
+        }
+        rowCount++;
+        fireTableRowsInserted(row, row);
+    }
+
+    // Removes from the cached page and pulls the first row of each following cached page forward. Where the
+    // next page is not cached the short page cannot be completed, so it is dropped and fetched again.
+    private void removeRow(int row) {
+        int page = row / pageSize;
+        BookTable table = pages.get(page);
+        table.remove(row % pageSize);
+        rowCount--;
+        while ((page + 1) * pageSize <= rowCount) {
+            BookTable next = pages.get(page + 1);
+            if (next == null || next.isEmpty()) {
+                dropPagesFrom(page);
+                break;
+            }
+            table.add(next.getBook(0));
+            next.remove(0);
+            pageKeys.put(page + 1, table.getBook(table.size() - 1));
+            table = next;
+            page++;
+        }
+        fireTableRowsDeleted(row, row);
+    }
+
+    // Drops the cached pages from the given one onwards, together with the keyset starts that depend on them.
+    private void dropPagesFrom(int page) {
+        pages.keySet().removeIf(p -> p >= page);
+        pageKeys.keySet().removeIf(p -> p > page);
+        pending.entrySet().removeIf(entry -> {
+            if (entry.getKey() >= page) {
+                entry.getValue().cancel(true);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    // Row at which the book is or would be shown, or -1 if that part of the result is not loaded.
+    private int insertionRow(Book book) {
+        if (rowCount == 0) {
+            return 0;
+        }
+        for (Map.Entry<Integer, BookTable> entry : new ArrayList<>(pages.entrySet())) {
+            int page = entry.getKey();
+            BookTable table = entry.getValue();
+            if (table.isEmpty()) {
+                continue;
+            }
+            int first = page * pageSize;
+            if (query.compare(book, table.getBook(0)) < 0) {
+                if (page == 0) {
+                    return 0;
+                }
+            } else if (query.compare(book, table.getBook(table.size() - 1)) <= 0) {
+                return first + insertionPoint(table, book);
+            } else {
+                BookTable next = pages.get(page + 1);
+                boolean lastPage = first + table.size() >= rowCount;
+                if (lastPage || next != null && !next.isEmpty() && query.compare(book, next.getBook(0)) < 0) {
+                    return first + table.size();
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Index within the page at which the book would be inserted to keep the page in the query's order.
+    private int insertionPoint(BookTable table, Book book) {
+        if (query.isIdOrder()) {
+            return table.insertionPoint(book.getId());
+        }
+        int low = 0;
+        int high = table.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (query.compare(table.getBook(mid), book) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Row of a book among the cached pages, or -1 if its page is not cached.
+    private int rowOf(int bookId) {
+        boolean idOrder = query.isIdOrder();
+        for (Map.Entry<Integer, BookTable> entry : pages.entrySet()) {
+            BookTable table = entry.getValue();
+            int index = idOrder ? table.indexOf(bookId) : table.find(bookId);
+            if (index != -1) {
+                return entry.getKey() * pageSize + index;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the book shown at the given row, or null while its page is still loading.
+    public Book getBookAt(int row) {
+        BookTable page = pageAt(row);
+        return page == null ? null : page.getBook(row % pageSize);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        BookTable page = pageAt(row);
+        if (page == null) {
+            return column == 1 ? "Loading..." : null;
+        }
+        int index = row % pageSize;
+        switch (column) {
+            case 0:
+                return page.getId(index);
+            case 1:
+                return page.getTitle(index);
+            case 2:
+                return page.getAuthor(index);
+            default:
+                return page.isAvailable(index) ? "Yes" : "No";
+        }
+    }
+
+    // The cached page holding the row, or null (after requesting it) while it is still loading.
+    private BookTable pageAt(int row) {
+        BookTable page = pages.get(row / pageSize);
+        if (page == null) {
+            requestPage(row / pageSize, true, false);
+            return null;
+        }
+        return row % pageSize < page.size() ? page : null;
+    }
+
+    private void requestPage(int page, boolean prefetchNext, boolean force) {
+        if (!force && page * pageSize >= rowCount || pages.containsKey(page) || pending.containsKey(page)) {
+            return;
+        }
+        int current = generation;
+        BookQuery fetched = query;
+        Book knownKey = pageKeys.get(page);
+        CompletableFuture<List<Book>> load = AsyncDatabase.supply(() -> {
+            if (page == 0 || knownKey != null) {
+                return source.fetchPage(fetched, knownKey, pageSize);
+            }
+            Book after = source.bookAtOffset(fetched, page * pageSize - 1);
+            return after == null ? Collections.<Book>emptyList() : source.fetchPage(fetched, after, pageSize);
+        });
+        pending.put(page, load);
+        load.whenComplete((books, error) -> SwingUtilities.invokeLater(() -> {
+            // Cancelled when its page was dropped; a later request fetches it again
+            if (current != generation || load.isCancelled()) {
+                return;
+            }
+            pending.remove(page);
+            if (error != null) {
+                Metrics.error("errors.tableModel", error);
+                return;
+            }
+            pageLoaded(page, books, prefetchNext);
+        }));
+    }
+
+    private void pageLoaded(int page, List<Book> books, boolean prefetchNext) {
+        pages.put(page, BookTable.of(books, authors));
+        if (!books.isEmpty()) {
+            pageKeys.put(page + 1, books.get(books.size() - 1));
+        }
+        int first = page * pageSize;
+        int last = Math.min(first + pageSize, rowCount) - 1;
+        if (page == 0 && !countKnown) {
+            // Show the first matches while the count is still running
+            rowCount = books.size();
+            fireTableDataChanged();
+        } else if (first <= last) {
+            fireTableRowsUpdated(first, last);
+        }
+        // Prefetch the next window so scrolling forward rarely shows placeholders.
+        if (prefetchNext) {
+            requestPage(page + 1, false, false);
+        }
+    }
+}
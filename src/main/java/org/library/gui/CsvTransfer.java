@@ -0,0 +1,128 @@
+package org.library.gui;
+
+import org.library.RequestExecutor;
+import org.library.book.BookCsv;
+import org.library.book.BookQuery;
+import org.library.book.BookRepository;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Runs CSV import and export on the shared RequestExecutor, without a timeout, with a cancellable progress monitor.
+// The monitor is created and updated on the EDT; the jobs post their progress to it after each batch.
+class CsvTransfer {
+    private final Component parent;
+    private final BookRepository books;
+    private final BookCsv csv = new BookCsv();
+
+    CsvTransfer(Component parent, BookRepository books) {
+        this.parent = parent;
+        this.books = books;
+    }
+
+    void importBooks(Runnable onChanged) {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        long size = file.length();
+        ProgressMonitor monitor = new ProgressMonitor(parent, "Importing " + file.getName(), "", 0, 100);
+        CompletableFuture<Long> job = RequestExecutor.shared().submit(() -> {
+            // Progress is by bytes read, as the number of records is not known up front
+            CountingInputStream input = new CountingInputStream(new FileInputStream(file));
+            try (Reader reader = new InputStreamReader(new BufferedInputStream(input), StandardCharsets.UTF_8)) {
+                return csv.importBooks(reader, imported -> {
+                    long read = input.count;
+                    SwingUtilities.invokeLater(() -> {
+                        monitor.setNote(imported + " books imported");
+                        monitor.setProgress(size == 0 ? 99 : (int) Math.min(99, read * 100 / size));
+                    });
+                }, monitor::isCanceled);
+            }
+        }, 0);
+        job.whenComplete((imported, error) -> SwingUtilities.invokeLater(() -> {
+            monitor.close();
+            books.invalidateAll();
+            onChanged.run();
+            report(imported, error, "Imported %d books.", "Import cancelled. Books imported before the last batch were kept.");
+        }));
+    }
+
+    void exportBooks() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("books.csv"));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        ProgressMonitor monitor = new ProgressMonitor(parent, "Exporting " + file.getName(), "", 0, 100);
+        CompletableFuture<Long> job = RequestExecutor.shared().submit(() -> {
+            int total = books.count(BookQuery.ALL);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                return csv.exportBooks(writer, exported -> SwingUtilities.invokeLater(() -> {
+                    monitor.setNote(exported + " books exported");
+                    monitor.setProgress(total == 0 ? 99 : (int) Math.min(99, exported * 100 / total));
+                }), monitor::isCanceled);
+            }
+        }, 0);
+        job.whenComplete((exported, error) -> SwingUtilities.invokeLater(() -> {
+            monitor.close();
+            report(exported, error, "Exported %d books.", "Export cancelled. The file is incomplete.");
+        }));
+    }
+
+    private void report(Long count, Throwable error, String success, String cancelled) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause == null) {
+            JOptionPane.showMessageDialog(parent, String.format(success, count), "Success", JOptionPane.INFORMATION_MESSAGE);
+        } else if (cause instanceof InterruptedIOException) {
+            JOptionPane.showMessageDialog(parent, cancelled, "Cancelled", JOptionPane.WARNING_MESSAGE);
+        } else {
+            UiTasks.showError(parent, cause);
+        }
+    }
+
+    // Counts the bytes read so far, for the import's progress.
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.library.gui;
+
+import javax.swing.Timer;
+
+// Merges a burst of requests into a single run of the action once the burst has been quiet for the delay.
+// Must be used from the EDT; the action also runs on the EDT.
+public class Debouncer {
+    private final Timer timer;
+
+    public Debouncer(int delayMillis, Runnable action) {
+        timer = new Timer(delayMillis, e -> action.run());
+        timer.setRepeats(false);
+    }
+
+    public void request() {
+        timer.restart();
+    }
+
+    public void cancel() {
+        timer.stop();
+    }
+}
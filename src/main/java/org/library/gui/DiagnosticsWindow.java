@@ -0,0 +1,139 @@
+package org.library.gui;
+
+import org.library.metrics.Histogram;
+import org.library.metrics.Metrics;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+// Admin view of the metrics registry: latency percentiles per query type and the counters and gauges,
+// refreshed every second while the window is open. The same numbers are available over JMX. The stalls
+// tab lists the event dispatches the EDT watchdog caught, with the stack captured while they ran, and the errors
+// tab the latest failures reported to the registry.
+class DiagnosticsWindow extends JFrame {
+    private final DefaultTableModel latencies = readOnlyModel("Name", "Count", "Mean ms", "p50 ms", "p95 ms", "p99 ms", "Max ms");
+    private final DefaultTableModel values = readOnlyModel("Name", "Value");
+    private final JTextArea stalls = new JTextArea();
+    private final JTextArea errors = new JTextArea();
+    private final Timer refresher = new Timer(1000, e -> refresh());
+    private List<EdtWatchdog.Stall> shownStalls;
+    private List<Metrics.Failure> shownErrors;
+
+    DiagnosticsWindow() {
+        setTitle("Library App - Diagnostics");
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(800, 500);
+
+        stalls.setEditable(false);
+        stalls.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        errors.setEditable(false);
+        errors.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Counters and gauges", new JScrollPane(new JTable(values)));
+        tabs.addTab("EDT stalls", new JScrollPane(stalls));
+        tabs.addTab("Errors", new JScrollPane(errors));
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(new JTable(latencies)), tabs);
+        split.setResizeWeight(0.6);
+
+        JCheckBox enabled = new JCheckBox("Instrumentation enabled", Metrics.isEnabled());
+        enabled.addActionListener(e -> Metrics.setEnabled(enabled.isSelected()));
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            Metrics.reset();
+            refresh();
+        });
+        JPanel buttons = new JPanel();
+        buttons.add(enabled);
+        buttons.add(resetButton);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(split, BorderLayout.CENTER);
+        panel.add(buttons, BorderLayout.SOUTH);
+        add(panel);
+
+        refresh();
+        refresher.start();
+    }
+
+    private void refresh() {
+        latencies.setRowCount(0);
+        for (Map.Entry<String, Histogram.Snapshot> entry : Metrics.latencies().entrySet()) {
+            Histogram.Snapshot h = entry.getValue();
+            latencies.addRow(new Object[]{entry.getKey(), h.getCount(), millis(h.getMean()), millis(h.getP50()),
+                    millis(h.getP95()), millis(h.getP99()), millis(h.getMax())});
+        }
+        values.setRowCount(0);
+        Metrics.counters().forEach((name, value) -> values.addRow(new Object[]{name, value}));
+        Metrics.gauges().forEach((name, value) -> values.addRow(new Object[]{name, value}));
+        refreshStalls();
+        refreshErrors();
+    }
+
+    // Only rewrites the text when the list changed, so the scroll position survives the refresh
+    private void refreshStalls() {
+        EdtWatchdog watchdog = EdtWatchdog.current();
+        if (watchdog == null) {
+            stalls.setText("The EDT watchdog is not running (library.edt.watchdog=false).");
+            return;
+        }
+        List<EdtWatchdog.Stall> recent = watchdog.recentStalls();
+        if (recent.equals(shownStalls)) {
+            return;
+        }
+        shownStalls = recent;
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS");
+        StringBuilder text = new StringBuilder();
+        for (EdtWatchdog.Stall stall : recent) {
+            text.append(time.format(new Date(stall.getAt()))).append("  ").append(stall).append("\n\n");
+        }
+        stalls.setText(recent.isEmpty() ? "No dispatch has blocked the EDT yet." : text.toString());
+        stalls.setCaretPosition(0);
+    }
+
+    // Newest first, each with its stack trace
+    private void refreshErrors() {
+        List<Metrics.Failure> recent = Metrics.recentErrors();
+        if (recent.equals(shownErrors)) {
+            return;
+        }
+        shownErrors = recent;
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS");
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            Metrics.Failure failure = recent.get(i);
+            out.print(time.format(new Date(failure.getAt())) + "  " + failure.getName() + "  ");
+            failure.getError().printStackTrace(out);
+            out.println();
+        }
+        out.flush();
+        errors.setText(recent.isEmpty() ? "No errors reported." : text.toString());
+        errors.setCaretPosition(0);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    private static DefaultTableModel readOnlyModel(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void dispose() {
+        refresher.stop();
+        super.dispose();
+    }
+}
@@ -0,0 +1,218 @@
+package org.library.gui;
+
+import org.library.metrics.Metrics;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Watches the Swing event thread. Every event dispatch is timed ("edt.dispatch"); one that runs longer
+// than the stall threshold is counted ("edt.stalls") and logged, and if it is still running after the
+// capture threshold the EDT's stack is taken while it is stuck, so the log shows what it was doing.
+// A probe posted at a fixed interval measures how long events wait before they run ("edt.latency").
+// Dispatches that open a modal dialog run a nested event loop; those are not reported as stalls.
+class EdtWatchdog {
+    private static final Logger LOG = Logger.getLogger(EdtWatchdog.class.getName());
+    private static final int RECENT_STALLS = 20;
+    private static EdtWatchdog installed;
+
+    private final long stallNanos;
+    private final long captureNanos;
+    private final long probeMillis;
+    private final Deque<Stall> recent = new ArrayDeque<>();
+    private final AtomicBoolean probePending = new AtomicBoolean();
+    private TimedEventQueue queue;
+    private ScheduledExecutorService watcher;
+
+    // Written on the EDT, read by the watcher thread
+    private volatile Thread edt;
+    private volatile long dispatchStart;
+    private volatile long capturedFor;
+    private volatile StackTraceElement[] capturedStack;
+
+    EdtWatchdog(long stallMillis, long captureMillis, long probeMillis) {
+        this.stallNanos = TimeUnit.MILLISECONDS.toNanos(stallMillis);
+        this.captureNanos = TimeUnit.MILLISECONDS.toNanos(captureMillis);
+        this.probeMillis = probeMillis;
+    }
+
+    // Starts the process-wide watchdog unless -Dlibrary.edt.watchdog=false. Thresholds come from
+    // library.edt.stallMillis (100), library.edt.captureMillis (500) and library.edt.probeMillis (100).
+    static synchronized EdtWatchdog install() {
+        if (installed == null && Boolean.parseBoolean(System.getProperty("library.edt.watchdog", "true"))) {
+            installed = new EdtWatchdog(Long.getLong("library.edt.stallMillis", 100),
+                    Long.getLong("library.edt.captureMillis", 500), Long.getLong("library.edt.probeMillis", 100));
+            installed.start();
+        }
+        return installed;
+    }
+
+    // The watchdog started by install(), or null.
+    static synchronized EdtWatchdog current() {
+        return installed;
+    }
+
+    void start() {
+        TimedEventQueue timed = new TimedEventQueue();
+        onEdt(() -> Toolkit.getDefaultToolkit().getSystemEventQueue().push(timed));
+        synchronized (this) {
+            queue = timed;
+            watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "library-edt-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long checkMillis = Math.max(1, Math.min(probeMillis, TimeUnit.NANOSECONDS.toMillis(captureNanos) / 4));
+            watcher.scheduleWithFixedDelay(this::check, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void stop() {
+        TimedEventQueue timed;
+        synchronized (this) {
+            watcher.shutdownNow();
+            timed = queue;
+        }
+        onEdt(timed::remove);
+    }
+
+    // Pushing or popping a queue from another thread races with the EDT handing over to the new queue's
+    // thread, and an event posted meanwhile can be lost. Not under this lock, which dispatches take.
+    private static void onEdt(Runnable action) {
+        if (EventQueue.isDispatchThread()) {
+            action.run();
+            return;
+        }
+        try {
+            EventQueue.invokeAndWait(action);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Most recent stalls, newest first.
+    synchronized List<Stall> recentStalls() {
+        return new ArrayList<>(recent);
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        long start = dispatchStart;
+        Thread thread = edt;
+        if (start != 0 && capturedFor != start && now - start >= captureNanos && thread != null) {
+            capturedStack = thread.getStackTrace();
+            capturedFor = start;
+        }
+        if (probePending.compareAndSet(false, true)) {
+            EventQueue.invokeLater(() -> {
+                Metrics.record("edt.latency", System.nanoTime() - now);
+                probePending.set(false);
+            });
+        }
+    }
+
+    private void dispatched(AWTEvent event, long start, long nanos) {
+        Metrics.record("edt.dispatch", nanos);
+        if (nanos < stallNanos) {
+            return;
+        }
+        Metrics.increment("edt.stalls");
+        StackTraceElement[] stack = capturedFor == start ? capturedStack : null;
+        Stall stall = new Stall(System.currentTimeMillis(), TimeUnit.NANOSECONDS.toMillis(nanos), describe(event), stack);
+        synchronized (this) {
+            recent.addFirst(stall);
+            if (recent.size() > RECENT_STALLS) {
+                recent.removeLast();
+            }
+        }
+        LOG.log(stack != null ? Level.WARNING : Level.INFO, stall.toString());
+    }
+
+    private static String describe(AWTEvent event) {
+        String source = event.getSource() != null ? event.getSource().getClass().getName() : "null";
+        return event.getClass().getSimpleName() + " id=" + event.getID() + " from " + source;
+    }
+
+    private class TimedEventQueue extends EventQueue {
+        // Whether the dispatch in progress ran a nested event loop
+        private boolean nested;
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            edt = Thread.currentThread();
+            long outer = dispatchStart;
+            nested = false;
+            long start = System.nanoTime();
+            dispatchStart = start;
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                if (!nested) {
+                    dispatched(event, start, System.nanoTime() - start);
+                }
+                // Back in the enclosing dispatch, if any: it resumes now and is not reported itself
+                nested = outer != 0;
+                dispatchStart = outer != 0 ? System.nanoTime() : 0;
+            }
+        }
+
+        void remove() {
+            pop();
+        }
+    }
+
+    static class Stall {
+        private final long at;
+        private final long millis;
+        private final String event;
+        private final StackTraceElement[] stack;
+
+        Stall(long at, long millis, String event, StackTraceElement[] stack) {
+            this.at = at;
+            this.millis = millis;
+            this.event = event;
+            this.stack = stack;
+        }
+
+        long getAt() {
+            return at;
+        }
+
+        long getMillis() {
+            return millis;
+        }
+
+        String getEvent() {
+            return event;
+        }
+
+        // The EDT's stack while the dispatch was running, or null if it finished before the capture threshold.
+        StackTraceElement[] getStack() {
+            return stack;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("EDT blocked for ").append(millis).append(" ms by ").append(event);
+            if (stack != null) {
+                for (StackTraceElement frame : stack) {
+                    text.append("\n\tat ").append(frame);
+                }
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.library.gui;
+
+import org.library.database.AsyncDatabase;
+import org.library.loan.CirculationService;
+import org.library.loan.Loan;
+import org.library.loan.OverdueSummary;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.sql.Timestamp;
+
+// Read-only dialogs over the loan history. Rows are fetched in pages off the EDT; the queries behind them
+// are aggregated in the database, so the dialogs never load the whole loans table.
+class LoanReports {
+    private static final int PAGE_SIZE = 100;
+    private static final int REPORT_LIMIT = 500;
+
+    private final Component parent;
+    private final CirculationService circulation;
+
+    LoanReports(Component parent, CirculationService circulation) {
+        this.parent = parent;
+        this.circulation = circulation;
+    }
+
+    // The user's loans, newest first, with a button that fetches the next page.
+    void showHistory(int userId) {
+        DefaultTableModel model = readOnlyModel("Book", "Borrowed", "Due", "Returned", "Status");
+        JButton moreButton = new JButton("Load more");
+        long[] lastId = {Long.MAX_VALUE};
+        Runnable loadPage = () -> {
+            moreButton.setEnabled(false);
+            UiTasks.run(parent, AsyncDatabase.supply(() -> circulation.history(userId, lastId[0], PAGE_SIZE)), page -> {
+                Timestamp now = circulation.now();
+                for (Loan loan : page) {
+                    model.addRow(new Object[]{title(loan), loan.getBorrowedAt(), loan.getDueAt(), loan.getReturnedAt(), status(loan, now)});
+                    lastId[0] = loan.getId();
+                }
+                moreButton.setEnabled(page.size() == PAGE_SIZE);
+            });
+        };
+        moreButton.addActionListener(e -> loadPage.run());
+        loadPage.run();
+
+        JPanel content = new JPanel(new BorderLayout());
+        content.add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+        JPanel buttons = new JPanel();
+        buttons.add(moreButton);
+        content.add(buttons, BorderLayout.SOUTH);
+        show("Loan History", content);
+    }
+
+    // Overdue loans, summarised per user and listed individually.
+    void showOverdue() {
+        DefaultTableModel byUser = readOnlyModel("User", "Overdue books", "Oldest due date");
+        DefaultTableModel byLoan = readOnlyModel("User ID", "Book", "Borrowed", "Due");
+        UiTasks.run(parent, AsyncDatabase.supply(() -> circulation.overdueByUser(REPORT_LIMIT)), rows -> {
+            for (OverdueSummary row : rows) {
+                String user = row.getUsername() != null ? row.getUsername() : "#" + row.getUserId();
+                byUser.addRow(new Object[]{user, row.getOverdueCount(), row.getOldestDueAt()});
+            }
+        });
+        UiTasks.run(parent, AsyncDatabase.supply(() -> circulation.overdue(REPORT_LIMIT)), rows -> {
+            for (Loan loan : rows) {
+                byLoan.addRow(new Object[]{loan.getUserId(), title(loan), loan.getBorrowedAt(), loan.getDueAt()});
+            }
+        });
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("By user", new JScrollPane(new JTable(byUser)));
+        tabs.addTab("Loans", new JScrollPane(new JTable(byLoan)));
+        show("Overdue Loans", tabs);
+    }
+
+    private void show(String title, JComponent content) {
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), title, Dialog.ModalityType.MODELESS);
+        dialog.add(content);
+        dialog.setSize(700, 400);
+        dialog.setLocationRelativeTo(parent);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.setVisible(true);
+    }
+
+    private static DefaultTableModel readOnlyModel(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    private static String title(Loan loan) {
+        return loan.getBookTitle() != null ? loan.getBookTitle() : "(deleted book #" + loan.getBookId() + ")";
+    }
+
+    private static String status(Loan loan, Timestamp now) {
+        if (loan.isOpen()) {
+            return loan.isOverdue(now) ? "Overdue" : "On loan";
+        }
+        return loan.isOverdue(now) ? "Returned late" : "Returned";
+    }
+}
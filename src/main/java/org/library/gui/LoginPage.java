@@ -1,17 +1,19 @@
 package org.library.gui;
 
+import org.library.loan.CirculationService;
+import org.library.user.Session;
 import org.library.user.User;
 import org.library.user.Role;
-import org.library.database.DatabaseManager;
+import org.library.user.UserService;
+import org.library.database.AsyncDatabase;
+import org.library.database.LibraryProperties;
+import org.library.metrics.Metrics;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 public class LoginPage extends JFrame {
     private JPanel panel;
@@ -20,6 +22,9 @@ public class LoginPage extends JFrame {
     private JButton loginButton;
     private JButton registerButton;
 
+    private final UserService users = new UserService();
+    private final CirculationService circulation = new CirculationService();
+
     public LoginPage() {
         setTitle("Library App - Login");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -54,35 +59,29 @@ public class LoginPage extends JFrame {
         panel.add(registerButton);
 
         add(panel);
+
+        // Migrate and warm up while the user is typing
+        Startup.start();
     }
 
     private void login() {
         String username = usernameField.getText();
         String password = String.valueOf(passwordField.getPassword());
 
-        User user = authenticate(username, password);
-        if (user != null) {
-            openUserPage(user);
-        } else {
-            JOptionPane.showMessageDialog(panel, "Invalid username or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
-        }
-    }
-
-    private User authenticate(String username, String password) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM users WHERE username = ? AND password = ?")) {
-            stmt.setString(1, username);
-            stmt.setString(2, password);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                int id = rs.getInt("id");
-                Role role = Role.valueOf(rs.getString("role"));
-                return new User(id, username, password, role);
+        // Ignore repeated clicks while the previous attempt is still running
+        loginButton.setEnabled(false);
+        // The session's loans are loaded in the same background task as the login
+        CompletableFuture<Session> login = Startup.start().thenCompose(ready -> AsyncDatabase.supply(() -> {
+            User user = users.authenticate(username, password);
+            return user != null ? circulation.openSession(user) : null;
+        }));
+        UiTasks.run(panel, login, session -> {
+            if (session != null) {
+                openHomePage(session);
+            } else {
+                JOptionPane.showMessageDialog(panel, "Invalid username or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        }).whenComplete((session, error) -> SwingUtilities.invokeLater(() -> loginButton.setEnabled(true)));
     }
 
     private void showRegisterDialog() {
@@ -108,39 +107,42 @@ public class LoginPage extends JFrame {
     }
 
     private void registerUser(String username, String password, Role role) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("INSERT INTO users (username, password, role) VALUES (?, ?, ?)")) {
-            stmt.setString(1, username);
-            stmt.setString(2, password);
-            stmt.setString(3, role.name());
-            stmt.executeUpdate();
-            JOptionPane.showMessageDialog(panel, "User registered successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        CompletableFuture<Boolean> register = Startup.start().thenCompose(ready -> AsyncDatabase.supply(() ->
+                users.register(username, password, role)));
+        UiTasks.run(panel, register, registered -> {
+            if (registered) {
+                JOptionPane.showMessageDialog(panel, "User registered successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(panel, "The username " + username + " is already taken.", "Registration Failed",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
 
-    private void openUserPage(User user) {
-        if (user.getRole() == Role.ADMIN) {
-            openAdminPage();
+    private void openHomePage(Session session) {
+        if (session.isAdmin()) {
+            openAdminPage(session);
         } else {
-            openUserPage();
+            openUserPage(session);
         }
     }
 
-    private void openAdminPage() {
-        AdminPage adminPage = new AdminPage();
+    private void openAdminPage(Session session) {
+        AdminPage adminPage = new AdminPage(session);
         adminPage.setVisible(true);
         dispose();
     }
 
-    private void openUserPage() {
-        UserPage userPage = new UserPage();
+    private void openUserPage(Session session) {
+        UserPage userPage = new UserPage(session);
         userPage.setVisible(true);
         dispose();
     }
 
     public static void main(String[] args) {
+        LibraryProperties.load();
+        Metrics.registerMBean();
+        EdtWatchdog.install();
         SwingUtilities.invokeLater(() -> {
             new LoginPage().setVisible(true);
         });
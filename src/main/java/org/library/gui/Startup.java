@@ -0,0 +1,39 @@
+package org.library.gui;
+
+import org.library.book.BookChangeFeed;
+import org.library.book.BookRepository;
+import org.library.database.AsyncDatabase;
+import org.library.database.DatabaseManager;
+
+import java.util.concurrent.CompletableFuture;
+
+// Work done once per process while the login window is on screen. The schema is migrated before anything
+// else touches the database. Unless -Dlibrary.warmup=false, the pool then opens its minimum number of
+// connections and the first catalogue page is loaded into the shared repository, so the first book
+// window does not wait for a cold connection and query. Migrations may take a while on a large catalogue,
+// so this work has no timeout. Unless -Dlibrary.dictionary=false, the titles and authors for autocompletion
+// are then loaded in the background and kept current by the change feed; login does not wait for them.
+final class Startup {
+    private static CompletableFuture<Void> started;
+
+    private Startup() {
+    }
+
+    // Starts the work on the first call and returns the same future afterwards; a failed start is retried.
+    static synchronized CompletableFuture<Void> start() {
+        if (started == null || started.isCompletedExceptionally()) {
+            started = AsyncDatabase.supply(() -> {
+                DatabaseManager.migrate();
+                if (Boolean.parseBoolean(System.getProperty("library.warmup", "true"))) {
+                    DatabaseManager.getPool().fill();
+                    BookTableModel.preload(BookRepository.shared());
+                }
+                return null;
+            }, 0);
+            if (Boolean.parseBoolean(System.getProperty("library.dictionary", "true"))) {
+                started.thenRun(() -> BookRepository.shared().getDictionary().follow(BookChangeFeed.shared()));
+            }
+        }
+        return started;
+    }
+}
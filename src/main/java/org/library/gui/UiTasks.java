@@ -0,0 +1,47 @@
+package org.library.gui;
+
+import org.library.metrics.Metrics;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+// Bridges background database futures back onto the EDT.
+final class UiTasks {
+
+    private UiTasks() {
+    }
+
+    // Shows a wait cursor on the owning window until the future completes, then delivers the result on the EDT.
+    // Failures are reported in an error dialog; cancelled futures are ignored.
+    static <T> CompletableFuture<T> run(Component owner, CompletableFuture<T> future, Consumer<T> onSuccess) {
+        Window window = SwingUtilities.getWindowAncestor(owner);
+        Component busy = window != null ? window : owner;
+        busy.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        future.whenComplete((value, error) -> SwingUtilities.invokeLater(() -> {
+            busy.setCursor(Cursor.getDefaultCursor());
+            if (error == null) {
+                // Time the callback holds the EDT, e.g. to rebuild a table
+                long start = System.nanoTime();
+                onSuccess.accept(value);
+                Metrics.record("edt.callback", System.nanoTime() - start);
+            } else {
+                showError(owner, error);
+            }
+        }));
+        return future;
+    }
+
+    static void showError(Component owner, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+            return;
+        }
+        Metrics.error("errors.ui", cause);
+        JOptionPane.showMessageDialog(owner, "Database error: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+}
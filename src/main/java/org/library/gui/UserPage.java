@@ -1,48 +1,56 @@
 package org.library.gui;
 
 import org.library.book.Book;
-import org.library.database.DatabaseManager;
+import org.library.book.BookChangeFeed;
+import org.library.book.BookRepository;
+import org.library.database.AsyncDatabase;
+import org.library.loan.CirculationResult;
+import org.library.loan.CirculationService;
+import org.library.user.Session;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class UserPage extends JFrame {
     private JPanel panel;
     private JTable bookTable;
     private JButton borrowButton;
     private JButton returnButton;
+    private JButton historyButton;
     private JButton logoutButton;
+    private JLabel loansLabel;
 
-    private List<Book> books;
+    private static final int SUGGESTIONS = 8;
 
-    public UserPage() {
-        setTitle("Library App - User Page");
+    private final Session session;
+    private final BookRepository books = BookRepository.shared();
+    private final CirculationService circulation = new CirculationService();
+    private final BookChangeFeed changes = BookChangeFeed.shared();
+    private BookTableModel bookModel;
+    // Edits from this and other windows or clients arrive through the change feed
+    private final BookChangeFeed.Listener changeListener = batch -> SwingUtilities.invokeLater(() -> bookModel.booksChanged(batch));
+
+    public UserPage(Session session) {
+        this.session = session;
+        setTitle("Library App - User Page (" + session.getUser().getUsername() + ")");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setSize(600, 400);
 
         panel = new JPanel(new BorderLayout());
 
-        // Load books from database
-        loadBooks();
-
         // Create table to display books
         createTable();
+        refreshTable();
+        changes.addListener(changeListener);
 
         // Create borrow button
         borrowButton = new JButton("Borrow Book");
         borrowButton.addActionListener(e -> {
-            int selectedRow = bookTable.getSelectedRow();
-            if (selectedRow != -1) {
-                Book selectedBook = books.get(selectedRow);
+            Book selectedBook = getSelectedBook();
+            if (selectedBook != null) {
                 borrowBook(selectedBook);
             } else {
                 JOptionPane.showMessageDialog(panel, "Select a book to borrow.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -52,15 +60,19 @@ public class UserPage extends JFrame {
         // Create return button
         returnButton = new JButton("Return Book");
         returnButton.addActionListener(e -> {
-            int selectedRow = bookTable.getSelectedRow();
-            if (selectedRow != -1) {
-                Book selectedBook = books.get(selectedRow);
+            Book selectedBook = getSelectedBook();
+            if (selectedBook != null) {
                 returnBook(selectedBook);
             } else {
                 JOptionPane.showMessageDialog(panel, "Select a book to return.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
 
+        // Show the user's past and current loans
+        LoanReports loanReports = new LoanReports(panel, circulation);
+        historyButton = new JButton("My Loans");
+        historyButton.addActionListener(e -> loanReports.showHistory(session.getUserId()));
+
         // Create logout button
         logoutButton = new JButton("Logout");
         logoutButton.addActionListener(e -> {
@@ -71,129 +83,84 @@ public class UserPage extends JFrame {
         JPanel buttonPanel = new JPanel();
         buttonPanel.add(borrowButton);
         buttonPanel.add(returnButton);
+        buttonPanel.add(historyButton);
+        loansLabel = new JLabel();
+        buttonPanel.add(loansLabel);
         buttonPanel.add(logoutButton);
 
+        BookSearchPanel searchPanel = new BookSearchPanel(bookModel::setQuery);
+        AutoCompletion.attach(searchPanel.getSearchField(), text -> books.getDictionary().complete(text, SUGGESTIONS));
+        panel.add(searchPanel, BorderLayout.NORTH);
         panel.add(new JScrollPane(bookTable), BorderLayout.CENTER);
         panel.add(buttonPanel, BorderLayout.SOUTH);
 
         add(panel);
-    }
 
-    private void loadBooks() {
-        books = new ArrayList<>();
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM books")) {
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String title = rs.getString("title");
-                String author = rs.getString("author");
-                boolean available = rs.getBoolean("available");
-                Book book = new Book(id, title, author, available);
-                books.add(book);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        // Borrow and Return follow the selected row and the session's loans, so neither needs a query
+        bookTable.getSelectionModel().addListSelectionListener(e -> updateButtons());
+        bookModel.addTableModelListener(e -> updateButtons());
+        updateButtons();
     }
 
     private void createTable() {
-        String[] columnNames = {"ID", "Title", "Author", "Available"};
-        Object[][] data = new Object[books.size()][4];
-
-        for (int i = 0; i < books.size(); i++) {
-            Book book = books.get(i);
-            data[i][0] = book.getId();
-            data[i][1] = book.getTitle();
-            data[i][2] = book.getAuthor();
-            data[i][3] = book.isAvailable() ? "Yes" : "No";
-        }
-
-        DefaultTableModel model = new DefaultTableModel(data, columnNames) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-
-        bookTable = new JTable(model);
+        bookModel = new BookTableModel(books);
+        bookTable = new JTable(bookModel);
+        bookTable.setRowSorter(new BookRowSorter(bookModel));
         bookTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
     }
 
-    private void borrowBook(Book book) {
-        int userId = 1; // Replace with actual user ID (session user ID)
-        try (Connection conn = DatabaseManager.getConnection()) {
-            // Check if the book is available
-            if (!book.isAvailable()) {
-                JOptionPane.showMessageDialog(panel, "This book is already borrowed.", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
+    private void updateButtons() {
+        Book book = getSelectedBook();
+        borrowButton.setEnabled(book != null && book.isAvailable() && !session.hasBorrowed(book.getId()));
+        returnButton.setEnabled(book != null && session.hasBorrowed(book.getId()));
+        loansLabel.setText("On loan: " + session.getBorrowedBookIds().size());
+    }
 
-            // Insert into borrowed_books table
-            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO borrowed_books (user_id, book_id) VALUES (?, ?)")) {
-                stmt.setInt(1, userId);
-                stmt.setInt(2, book.getId());
-                stmt.executeUpdate();
-            }
+    private void borrowBook(Book book) {
+        CompletableFuture<CirculationResult> borrow = AsyncDatabase.supply(() -> circulation.borrow(session, book.getId()));
 
-            // Update book availability to false
-            try (PreparedStatement stmt = conn.prepareStatement("UPDATE books SET available = false WHERE id = ?")) {
-                stmt.setInt(1, book.getId());
-                stmt.executeUpdate();
+        UiTasks.run(panel, borrow, result -> {
+            updateButtons();
+            if (result == CirculationResult.SUCCESS) {
+                JOptionPane.showMessageDialog(panel, "Book borrowed successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                changes.pollNow();
+            } else {
+                JOptionPane.showMessageDialog(panel, "This book is already borrowed.", "Error", JOptionPane.ERROR_MESSAGE);
+                // Our copy of the row was stale
+                refreshBook(book.getId());
             }
-
-            JOptionPane.showMessageDialog(panel, "Book borrowed successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-
-            // Refresh books list and table
-            loadBooks();
-            refreshTable();
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        });
     }
 
     private void returnBook(Book book) {
-        int userId = 1; // Replace with actual user ID (session user ID)
-        try (Connection conn = DatabaseManager.getConnection()) {
-            // Check if the book is borrowed by the current user
-            boolean isBorrowed = false;
-            try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM borrowed_books WHERE user_id = ? AND book_id = ?")) {
-                stmt.setInt(1, userId);
-                stmt.setInt(2, book.getId());
-                ResultSet rs = stmt.executeQuery();
-                if (rs.next()) {
-                    isBorrowed = true;
-                }
-            }
+        CompletableFuture<CirculationResult> giveBack = AsyncDatabase.supply(() -> circulation.returnBook(session, book.getId()));
 
-            if (!isBorrowed) {
+        UiTasks.run(panel, giveBack, result -> {
+            updateButtons();
+            if (result == CirculationResult.SUCCESS) {
+                JOptionPane.showMessageDialog(panel, "Book returned successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                changes.pollNow();
+            } else {
                 JOptionPane.showMessageDialog(panel, "You have not borrowed this book.", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-
-            // Delete from borrowed_books table
-            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM borrowed_books WHERE user_id = ? AND book_id = ?")) {
-                stmt.setInt(1, userId);
-                stmt.setInt(2, book.getId());
-                stmt.executeUpdate();
             }
+        });
+    }
 
-            // Update book availability to true
-            try (PreparedStatement stmt = conn.prepareStatement("UPDATE books SET available = true WHERE id = ?")) {
-                stmt.setInt(1, book.getId());
-                stmt.executeUpdate();
+    private void refreshBook(int bookId) {
+        books.invalidate(bookId);
+        UiTasks.run(panel, AsyncDatabase.supply(() -> books.findById(bookId)), fresh -> {
+            if (fresh != null) {
+                bookModel.bookUpdated(fresh);
+            } else {
+                bookModel.bookRemoved(bookId);
             }
+        });
+    }
 
-            JOptionPane.showMessageDialog(panel, "Book returned successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-
-            // Refresh books list and table
-            loadBooks();
-            refreshTable();
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    @Override
+    public void dispose() {
+        changes.removeListener(changeListener);
+        super.dispose();
     }
 
     private void performLogout() {
@@ -206,31 +173,17 @@ public class UserPage extends JFrame {
         });
     }
 
-    private void refreshTable() {
-        String[] columnNames = {"ID", "Title", "Author", "Available"};
-        Object[][] data = new Object[books.size()][4];
-
-        for (int i = 0; i < books.size(); i++) {
-            Book book = books.get(i);
-            data[i][0] = book.getId();
-            data[i][1] = book.getTitle();
-            data[i][2] = book.getAuthor();
-            data[i][3] = book.isAvailable() ? "Yes" : "No";
-        }
-
-        DefaultTableModel model = new DefaultTableModel(data, columnNames) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+    private Book getSelectedBook() {
+        int selectedRow = bookTable.getSelectedRow();
+        return selectedRow != -1 ? bookModel.getBookAt(selectedRow) : null;
+    }
 
-        bookTable.setModel(model);
+    private void refreshTable() {
+        bookModel.reload();
     }
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            new UserPage().setVisible(true);
-        });
+        // A user page needs a logged-in session
+        LoginPage.main(args);
     }
 }
@@ -0,0 +1,187 @@
+package org.library.loan;
+
+import org.library.database.AsyncDatabase;
+import org.library.database.DatabaseManager;
+import org.library.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind for borrows and returns: work submitted by concurrent callers is grouped into one transaction per
+// batch, so a busy desk pays for one connection borrow and one commit per batch instead of per event.
+//
+// Work is spread over lanes by key (the book id), each with its own thread, so work for one book always runs in
+// submission order, and a batch is written as soon as it holds batchSize events or its first event has waited
+// lingerMillis. A future completes only after its batch has committed, so no acknowledged event can be lost. If a
+// batch fails, for instance on a deadlock, it is rolled back and its events are retried one transaction each, so
+// only the failing event reports the error. Work must not commit or roll back the connection itself.
+public class CirculationQueue implements AutoCloseable {
+    private static final Entry<Void> STOP = new Entry<>(conn -> null);
+    private static CirculationQueue shared;
+
+    private final List<BlockingQueue<Entry<?>>> lanes = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final int batchSize;
+    private final long lingerNanos;
+    private boolean closed;
+
+    public CirculationQueue(int laneCount, int batchSize, long lingerMillis) {
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        for (int i = 0; i < laneCount; i++) {
+            BlockingQueue<Entry<?>> lane = new LinkedBlockingQueue<>();
+            String name = "library-circulation-" + (i + 1);
+            Thread thread = new Thread(() -> drain(lane), name);
+            thread.setDaemon(true);
+            lanes.add(lane);
+            threads.add(thread);
+            thread.start();
+        }
+        Metrics.gauge("circulation.queued", () -> lanes.stream().mapToLong(BlockingQueue::size).sum());
+    }
+
+    // Configured by library.circulation.lanes (2), library.circulation.batchSize (64) and
+    // library.circulation.lingerMillis (2).
+    public static synchronized CirculationQueue shared() {
+        if (shared == null) {
+            shared = new CirculationQueue(Integer.getInteger("library.circulation.lanes", 2),
+                    Integer.getInteger("library.circulation.batchSize", 64),
+                    Long.getLong("library.circulation.lingerMillis", 2));
+        }
+        return shared;
+    }
+
+    public synchronized <T> CompletableFuture<T> submit(int key, AsyncDatabase.SqlWork<T> work) {
+        if (closed) {
+            throw new IllegalStateException("Circulation queue is closed");
+        }
+        Entry<T> entry = new Entry<>(work);
+        lanes.get(Math.floorMod(key, lanes.size())).add(entry);
+        return entry.result;
+    }
+
+    // Writes the work already submitted and stops the lanes.
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (BlockingQueue<Entry<?>> lane : lanes) {
+            lane.add(STOP);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void drain(BlockingQueue<Entry<?>> lane) {
+        List<Entry<?>> batch = new ArrayList<>(batchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                Entry<?> first = lane.take();
+                if (first == STOP) {
+                    return;
+                }
+                batch.add(first);
+                long deadline = first.enqueued + lingerNanos;
+                while (batch.size() < batchSize) {
+                    Entry<?> next = lane.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    } else if (next == STOP) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Entry<?>> batch) {
+        long start = System.nanoTime();
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            boolean committed;
+            try {
+                for (Entry<?> entry : batch) {
+                    entry.run(conn);
+                }
+                conn.commit();
+                committed = true;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                if (batch.size() == 1) {
+                    throw e;
+                }
+                Metrics.increment("errors.circulation.batch");
+                committed = false;
+            }
+            if (committed) {
+                batch.forEach(Entry::complete);
+            } else {
+                for (Entry<?> entry : batch) {
+                    writeAlone(conn, entry);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            Metrics.increment("errors.circulation");
+            batch.forEach(entry -> entry.result.completeExceptionally(e));
+        } finally {
+            Metrics.record("circulation.batch", System.nanoTime() - start);
+            Metrics.increment("circulation.batches");
+            Metrics.add("circulation.events", batch.size());
+        }
+    }
+
+    private static void writeAlone(Connection conn, Entry<?> entry) throws SQLException {
+        try {
+            entry.run(conn);
+            conn.commit();
+            entry.complete();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            Metrics.increment("errors.circulation");
+            entry.result.completeExceptionally(e);
+        }
+    }
+
+    private static class Entry<T> {
+        final AsyncDatabase.SqlWork<T> work;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long enqueued = System.nanoTime();
+        T value;
+
+        Entry(AsyncDatabase.SqlWork<T> work) {
+            this.work = work;
+        }
+
+        void run(Connection conn) throws SQLException {
+            value = work.run(conn);
+        }
+
+        void complete() {
+            result.complete(value);
+            Metrics.record("circulation.wait", System.nanoTime() - enqueued);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.library.loan;
+
+public enum CirculationResult {
+    SUCCESS,
+    // The book was borrowed by someone else first (or no longer exists).
+    NOT_AVAILABLE,
+    // The user has no open loan for the book.
+    NOT_BORROWED
+}
@@ -0,0 +1,177 @@
+package org.library.loan;
+
+import org.library.book.BookDao;
+import org.library.database.AsyncDatabase;
+import org.library.database.DatabaseManager;
+import org.library.user.Session;
+import org.library.user.User;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// Borrow and return as single transactions. The availability check is folded into a conditional UPDATE,
+// so the database decides races between concurrent users instead of a possibly stale in-memory Book.
+// With -Dlibrary.circulation.writeBehind=true they go through the shared CirculationQueue instead, which
+// commits the borrows and returns of concurrent callers together; each call still waits for its commit.
+public class CirculationService {
+    private final BookDao books = new BookDao(false);
+    private final LoanDao loans = new LoanDao();
+    private final Clock clock;
+    private final Duration loanPeriod;
+    private final CirculationQueue queue;
+
+    public CirculationService() {
+        this(Clock.systemUTC(), Duration.ofDays(Integer.getInteger("library.loan.days", 14)),
+                Boolean.getBoolean("library.circulation.writeBehind") ? CirculationQueue.shared() : null);
+    }
+
+    public CirculationService(Clock clock, Duration loanPeriod) {
+        this(clock, loanPeriod, null);
+    }
+
+    // Without a queue every borrow and return is its own transaction.
+    public CirculationService(Clock clock, Duration loanPeriod, CirculationQueue queue) {
+        this.clock = clock;
+        this.loanPeriod = loanPeriod;
+        this.queue = queue;
+    }
+
+    // Starts a session for a logged-in user with their current loans loaded.
+    public Session openSession(User user) throws SQLException {
+        return new Session(user, openBookIds(user.getId()));
+    }
+
+    // Borrows for the session's user and records the loan in the session.
+    public CirculationResult borrow(Session session, int bookId) throws SQLException {
+        CirculationResult result = borrow(session.getUserId(), bookId);
+        if (result == CirculationResult.SUCCESS) {
+            session.loanStarted(bookId);
+        }
+        return result;
+    }
+
+    // Returns for the session's user. If the database has no open loan the session's copy was stale,
+    // so it is reloaded.
+    public CirculationResult returnBook(Session session, int bookId) throws SQLException {
+        CirculationResult result = returnBook(session.getUserId(), bookId);
+        if (result == CirculationResult.SUCCESS) {
+            session.loanEnded(bookId);
+        } else {
+            session.resetLoans(openBookIds(session.getUserId()));
+        }
+        return result;
+    }
+
+    public CirculationResult borrow(int userId, int bookId) throws SQLException {
+        if (queue != null) {
+            return await(queue.submit(bookId, conn -> borrow(conn, userId, bookId)));
+        }
+        return inTransaction(conn -> borrow(conn, userId, bookId));
+    }
+
+    public CirculationResult returnBook(int userId, int bookId) throws SQLException {
+        if (queue != null) {
+            return await(queue.submit(bookId, conn -> returnBook(conn, userId, bookId)));
+        }
+        return inTransaction(conn -> returnBook(conn, userId, bookId));
+    }
+
+    // The writes of a borrow, in the caller's transaction. Nothing is written unless it succeeds.
+    private CirculationResult borrow(Connection conn, int userId, int bookId) throws SQLException {
+        if (!books.markBorrowed(conn, bookId)) {
+            return CirculationResult.NOT_AVAILABLE;
+        }
+        Instant now = clock.instant();
+        loans.insert(conn, userId, bookId, Timestamp.from(now), Timestamp.from(now.plus(loanPeriod)));
+        return CirculationResult.SUCCESS;
+    }
+
+    private CirculationResult returnBook(Connection conn, int userId, int bookId) throws SQLException {
+        // The update both checks and closes the loan, so no separate SELECT is needed
+        if (!loans.close(conn, userId, bookId, now())) {
+            return CirculationResult.NOT_BORROWED;
+        }
+        books.markReturned(conn, bookId);
+        return CirculationResult.SUCCESS;
+    }
+
+    private static CirculationResult inTransaction(AsyncDatabase.SqlWork<CirculationResult> work) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                CirculationResult result = work.run(conn);
+                if (result == CirculationResult.SUCCESS) {
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+                return result;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Waits for the queued event's batch to commit. An interrupted caller does not learn the outcome, but the
+    // event is still written; the change feed shows it.
+    private static CirculationResult await(CompletableFuture<CirculationResult> pending) throws SQLException {
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the circulation queue", e);
+        }
+    }
+
+    // A page of the user's loans, newest first. Pass Long.MAX_VALUE for the first page and the id of the
+    // last loan shown for the next one.
+    public List<Loan> history(int userId, long beforeId, int limit) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return loans.history(conn, userId, beforeId, limit);
+        }
+    }
+
+    public List<Integer> openBookIds(int userId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return loans.openBookIds(conn, userId);
+        }
+    }
+
+    public List<Loan> currentLoans(int userId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return loans.openLoans(conn, userId);
+        }
+    }
+
+    public List<Loan> overdue(int limit) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return loans.overdue(conn, now(), limit);
+        }
+    }
+
+    public List<OverdueSummary> overdueByUser(int limit) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return loans.overdueByUser(conn, now(), limit);
+        }
+    }
+
+    public Timestamp now() {
+        return Timestamp.from(clock.instant());
+    }
+}
@@ -0,0 +1,61 @@
+package org.library.loan;
+
+import java.sql.Timestamp;
+
+// One row of the loan history, with the book title for display. The title is null if the book was deleted.
+public class Loan {
+    private final long id;
+    private final int userId;
+    private final int bookId;
+    private final String bookTitle;
+    private final Timestamp borrowedAt;
+    private final Timestamp dueAt;
+    private final Timestamp returnedAt;
+
+    public Loan(long id, int userId, int bookId, String bookTitle, Timestamp borrowedAt, Timestamp dueAt, Timestamp returnedAt) {
+        this.id = id;
+        this.userId = userId;
+        this.bookId = bookId;
+        this.bookTitle = bookTitle;
+        this.borrowedAt = borrowedAt;
+        this.dueAt = dueAt;
+        this.returnedAt = returnedAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public String getBookTitle() {
+        return bookTitle;
+    }
+
+    public Timestamp getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    public Timestamp getDueAt() {
+        return dueAt;
+    }
+
+    // Null while the book is still out.
+    public Timestamp getReturnedAt() {
+        return returnedAt;
+    }
+
+    public boolean isOpen() {
+        return returnedAt == null;
+    }
+
+    public boolean isOverdue(Timestamp now) {
+        return dueAt.before(returnedAt != null ? returnedAt : now);
+    }
+}
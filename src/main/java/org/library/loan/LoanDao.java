@@ -0,0 +1,110 @@
+package org.library.loan;
+
+import org.library.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+// SQL for the loans table, run on the caller's connection. Loans are never deleted; a return only sets
+// returned_at. The reports are single set-based queries over the composite indexes from db/mysql/V5.
+public class LoanDao {
+    private static final String SELECT = "SELECT l.id, l.user_id, l.book_id, b.title, l.borrowed_at, l.due_at, l.returned_at "
+            + "FROM loans l LEFT JOIN books b ON b.id = l.book_id";
+
+    public void insert(Connection conn, int userId, int bookId, Timestamp borrowedAt, Timestamp dueAt) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO loans (user_id, book_id, borrowed_at, due_at) VALUES (?, ?, ?, ?)")) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, bookId);
+            stmt.setTimestamp(3, borrowedAt);
+            stmt.setTimestamp(4, dueAt);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Closes the user's open loan of the book. Returns false if the user did not have the book.
+    public boolean close(Connection conn, int userId, int bookId, Timestamp returnedAt) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE loans SET returned_at = ? WHERE book_id = ? AND returned_at IS NULL AND user_id = ?")) {
+            stmt.setTimestamp(1, returnedAt);
+            stmt.setInt(2, bookId);
+            stmt.setInt(3, userId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    // Keyset page of a user's loans, newest first: up to limit loans with an id below beforeId.
+    public List<Loan> history(Connection conn, int userId, long beforeId, int limit) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT + " WHERE l.user_id = ? AND l.id < ? ORDER BY l.id DESC LIMIT ?")) {
+            stmt.setInt(1, userId);
+            stmt.setLong(2, beforeId);
+            stmt.setInt(3, limit);
+            return readAll(stmt);
+        }
+    }
+
+    public List<Loan> openLoans(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT + " WHERE l.user_id = ? AND l.returned_at IS NULL ORDER BY l.due_at")) {
+            stmt.setInt(1, userId);
+            return readAll(stmt);
+        }
+    }
+
+    // Ids of the books the user has on loan now.
+    public List<Integer> openBookIds(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT book_id FROM loans WHERE user_id = ? AND returned_at IS NULL")) {
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<Integer> result = new ArrayList<>();
+                while (rs.next()) {
+                    result.add(rs.getInt(1));
+                }
+                return result;
+            }
+        }
+    }
+
+    // Open loans past their due date, oldest first.
+    public List<Loan> overdue(Connection conn, Timestamp now, int limit) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT + " WHERE l.returned_at IS NULL AND l.due_at < ? ORDER BY l.due_at LIMIT ?")) {
+            stmt.setTimestamp(1, now);
+            stmt.setInt(2, limit);
+            return readAll(stmt);
+        }
+    }
+
+    // Overdue loans grouped per user, the longest overdue first. Aggregating before the join looks up
+    // each user once instead of once per loan.
+    public List<OverdueSummary> overdueByUser(Connection conn, Timestamp now, int limit) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT o.user_id, u.username, o.overdue, o.oldest FROM "
+                + "(SELECT user_id, COUNT(*) AS overdue, MIN(due_at) AS oldest FROM loans "
+                + "WHERE returned_at IS NULL AND due_at < ? GROUP BY user_id) o "
+                + "LEFT JOIN users u ON u.id = o.user_id ORDER BY o.oldest, o.user_id LIMIT ?")) {
+            stmt.setTimestamp(1, now);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<OverdueSummary> result = new ArrayList<>();
+                while (rs.next()) {
+                    result.add(new OverdueSummary(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getTimestamp(4)));
+                }
+                return result;
+            }
+        }
+    }
+
+    private static List<Loan> readAll(PreparedStatement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            List<Loan> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(new Loan(rs.getLong(1), rs.getInt(2), rs.getInt(3), rs.getString(4),
+                        rs.getTimestamp(5), rs.getTimestamp(6), rs.getTimestamp(7)));
+            }
+            Metrics.add("rows.loans", result.size());
+            return result;
+        }
+    }
+}
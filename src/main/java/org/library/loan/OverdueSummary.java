@@ -0,0 +1,34 @@
+package org.library.loan;
+
+import java.sql.Timestamp;
+
+// One line of the overdue report: how many books a user holds past their due date.
+public class OverdueSummary {
+    private final int userId;
+    private final String username;
+    private final int overdueCount;
+    private final Timestamp oldestDueAt;
+
+    public OverdueSummary(int userId, String username, int overdueCount, Timestamp oldestDueAt) {
+        this.userId = userId;
+        this.username = username;
+        this.overdueCount = overdueCount;
+        this.oldestDueAt = oldestDueAt;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getOverdueCount() {
+        return overdueCount;
+    }
+
+    public Timestamp getOldestDueAt() {
+        return oldestDueAt;
+    }
+}
@@ -0,0 +1,190 @@
+package org.library.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Process-wide registry of latency histograms, counters and gauges, read by the diagnostics window and
+// over JMX as org.library:type=Metrics. Instrumented code checks isEnabled() before doing any work, so
+// with -Dlibrary.metrics.enabled=false (or after setEnabled(false)) the cost is one volatile read.
+// Failures go through error(), which counts them, logs them and keeps the last few for the diagnostics window.
+public final class Metrics {
+    private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+    private static final int RECENT_ERRORS = 50;
+    private static final Deque<Failure> ERRORS = new ArrayDeque<>();
+    private static final ConcurrentHashMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = Boolean.parseBoolean(System.getProperty("library.metrics.enabled", "true"));
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static void record(String name, long nanos) {
+        if (enabled) {
+            HISTOGRAMS.computeIfAbsent(name, n -> new Histogram()).record(nanos);
+        }
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long amount) {
+        if (enabled) {
+            counter(name).add(amount);
+        }
+    }
+
+    // A counter to keep when incrementing it is itself on a hot path; callers check isEnabled() first.
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    // A value read on demand, such as the size of the connection pool. Replaces any gauge of that name.
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    // Counts the failure under the given counter and logs it with its stack trace. Unlike the counters, failures
+    // are logged and kept even when instrumentation is disabled.
+    public static void error(String name, Throwable error) {
+        increment(name);
+        LOG.log(Level.WARNING, name, error);
+        synchronized (ERRORS) {
+            if (ERRORS.size() == RECENT_ERRORS) {
+                ERRORS.removeFirst();
+            }
+            ERRORS.addLast(new Failure(System.currentTimeMillis(), name, error));
+        }
+    }
+
+    // The latest failures, oldest first.
+    public static List<Failure> recentErrors() {
+        synchronized (ERRORS) {
+            return new ArrayList<>(ERRORS);
+        }
+    }
+
+    public static Map<String, Histogram.Snapshot> latencies() {
+        Map<String, Histogram.Snapshot> result = new TreeMap<>();
+        HISTOGRAMS.forEach((name, histogram) -> result.put(name, histogram.snapshot()));
+        return result;
+    }
+
+    public static Map<String, Long> counters() {
+        Map<String, Long> result = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> result.put(name, counter.sum()));
+        return result;
+    }
+
+    public static Map<String, Long> gauges() {
+        Map<String, Long> result = new TreeMap<>();
+        GAUGES.forEach((name, gauge) -> result.put(name, gauge.getAsLong()));
+        return result;
+    }
+
+    public static void reset() {
+        HISTOGRAMS.values().forEach(Histogram::reset);
+        COUNTERS.values().forEach(LongAdder::reset);
+        synchronized (ERRORS) {
+            ERRORS.clear();
+        }
+    }
+
+    public static final class Failure {
+        private final long at;
+        private final String name;
+        private final Throwable error;
+
+        Failure(long at, String name, Throwable error) {
+            this.at = at;
+            this.name = name;
+            this.error = error;
+        }
+
+        public long getAt() {
+            return at;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + error;
+        }
+    }
+
+    // Publishes the registry to the platform MBean server; later calls do nothing.
+    public static synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new MetricsBean(), new ObjectName("org.library:type=Metrics"));
+            registered = true;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the metrics MBean", e);
+        }
+    }
+
+    private static class MetricsBean implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public Map<String, Histogram.Snapshot> getLatencies() {
+            return Metrics.latencies();
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return Metrics.counters();
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+            return Metrics.gauges();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
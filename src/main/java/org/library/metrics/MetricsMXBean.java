@@ -0,0 +1,18 @@
+package org.library.metrics;
+
+import java.util.Map;
+
+// JMX view of Metrics. Latencies are in nanoseconds.
+public interface MetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Histogram.Snapshot> getLatencies();
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    void reset();
+}
@@ -0,0 +1,356 @@
+package org.library.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.library.RequestExecutor;
+import org.library.book.Book;
+import org.library.book.BookChangeFeed;
+import org.library.book.BookQuery;
+import org.library.book.BookRepository;
+import org.library.database.AsyncDatabase;
+import org.library.database.DatabaseManager;
+import org.library.database.LibraryProperties;
+import org.library.loan.CirculationResult;
+import org.library.loan.CirculationService;
+import org.library.metrics.Metrics;
+import org.library.user.User;
+import org.library.user.UserService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Headless mode: the catalogue over HTTP with the JDK's built-in server, so desk clients can share one process and
+// its connection pool instead of each opening their own database connections. Responses are JSON:
+//
+//   GET  /api/health
+//   GET  /api/books?q=&mode=prefix|contains&availability=all|available|borrowed&sort=id|title|author|available
+//                  &desc=false&after=<next of the previous page>&limit=50
+//   GET  /api/books/count?q=&mode=&availability=
+//   GET  /api/books/<id>
+//   GET  /api/loans                     (the caller's open loans)
+//   POST /api/books/<id>/borrow
+//   POST /api/books/<id>/return
+//
+// Loans need HTTP Basic credentials of a library user. Requests run on virtual threads when the JVM has them
+// (Java 21+) and on a bounded pool otherwise. Their database work goes through the shared RequestExecutor, which
+// limits how much of it runs at once; work that waits past its timeout is answered with 503.
+public class CatalogueServer implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(CatalogueServer.class.getName());
+    private static final int MAX_LIMIT = 500;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BookRepository books;
+    private final BookChangeFeed changes;
+    private final CirculationService circulation;
+    private final UserService users;
+    // Keeps the change feed polling, so edits made by other clients reach the repository cache
+    private final BookChangeFeed.Listener changeListener = batch -> { };
+
+    public CatalogueServer(InetSocketAddress address, BookRepository books, BookChangeFeed changes,
+                           CirculationService circulation, UserService users) throws IOException {
+        this.books = books;
+        this.changes = changes;
+        this.circulation = circulation;
+        this.users = users;
+        this.executor = RequestExecutor.newThreadPerTaskExecutor("library-http", Integer.getInteger("library.server.threads", 64));
+        this.server = HttpServer.create(address, Integer.getInteger("library.server.backlog", 256));
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    public void start() {
+        changes.addListener(changeListener);
+        server.start();
+    }
+
+    // The bound port, useful after binding to port 0.
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+        changes.removeListener(changeListener);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String route = "other";
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+            String method = exchange.getRequestMethod();
+            Map<String, String> params = parameters(exchange.getRequestURI().getRawQuery());
+            if (path.length == 1 && path[0].equals("health")) {
+                route = "health";
+                send(exchange, 200, Json.field("status", "ok"));
+            } else if (path[0].equals("books") && path.length == 1) {
+                route = "books";
+                requireMethod(method, "GET");
+                int limit = Math.min(MAX_LIMIT, limit(params));
+                BookQuery query = query(params);
+                Book after = anchor(query, params.get("after"));
+                List<Book> page = database(() -> books.fetchPage(query, after, limit));
+                boolean more = page.size() == limit && !page.isEmpty();
+                send(exchange, 200, Json.page(page, more ? cursor(query, page.get(page.size() - 1)) : null));
+            } else if (path[0].equals("books") && path.length == 2 && path[1].equals("count")) {
+                route = "books.count";
+                requireMethod(method, "GET");
+                send(exchange, 200, Json.field("count", database(() -> books.count(query(params)))));
+            } else if (path[0].equals("books") && path.length == 2) {
+                route = "books.get";
+                requireMethod(method, "GET");
+                int bookId = Integer.parseInt(path[1]);
+                Book book = database(() -> books.findById(bookId));
+                if (book == null) {
+                    send(exchange, 404, Json.field("error", "No such book"));
+                } else {
+                    send(exchange, 200, Json.book(book));
+                }
+            } else if (path[0].equals("books") && path.length == 3 && (path[2].equals("borrow") || path[2].equals("return"))) {
+                route = "books." + path[2];
+                requireMethod(method, "POST");
+                User user = authenticate(exchange);
+                if (user != null) {
+                    int bookId = Integer.parseInt(path[1]);
+                    boolean borrow = path[2].equals("borrow");
+                    CirculationResult result = database(() -> borrow
+                            ? circulation.borrow(user.getId(), bookId) : circulation.returnBook(user.getId(), bookId));
+                    if (result == CirculationResult.SUCCESS) {
+                        changes.pollNow();
+                    }
+                    send(exchange, result == CirculationResult.SUCCESS ? 200 : 409, Json.field("result", result));
+                }
+            } else if (path.length == 1 && path[0].equals("loans")) {
+                route = "loans";
+                requireMethod(method, "GET");
+                User user = authenticate(exchange);
+                if (user != null) {
+                    send(exchange, 200, Json.loans(database(() -> circulation.currentLoans(user.getId()))));
+                }
+            } else {
+                send(exchange, 404, Json.field("error", "Not found"));
+            }
+        } catch (Busy e) {
+            Metrics.increment("errors.http.busy");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, Json.field("error", "Busy, try again"));
+        } catch (MethodNotAllowed e) {
+            exchange.getResponseHeaders().set("Allow", e.getMessage());
+            send(exchange, 405, Json.field("error", "Use " + e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException from malformed ids and numbers
+            send(exchange, 400, Json.field("error", String.valueOf(e.getMessage())));
+        } catch (SQLException | RuntimeException e) {
+            Metrics.error("errors.http", e);
+            send(exchange, 500, Json.field("error", "Internal error"));
+        } finally {
+            exchange.close();
+            Metrics.record("http." + route, System.nanoTime() - start);
+        }
+    }
+
+    // The user named by the Basic credentials, or null after answering 401.
+    private User authenticate(HttpExchange exchange) throws IOException, SQLException {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        User user = null;
+        String credentials = header != null && header.regionMatches(true, 0, "Basic ", 0, 6)
+                ? decode(header.substring(6).trim()) : null;
+        if (credentials != null) {
+            int colon = credentials.indexOf(':');
+            if (colon > 0) {
+                String username = credentials.substring(0, colon);
+                String password = credentials.substring(colon + 1);
+                user = database(() -> users.authenticate(username, password));
+            }
+        }
+        if (user == null) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"library\", charset=\"UTF-8\"");
+            send(exchange, 401, Json.field("error", "Login required"));
+        }
+        return user;
+    }
+
+    // Malformed credentials are the same as none, so they get a 401 rather than a 400.
+    private static String decode(String base64) {
+        try {
+            return new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Runs the work on the shared executor and waits for it, so requests take their turn for the database.
+    private static <T> T database(AsyncDatabase.SqlTask<T> task) throws SQLException {
+        try {
+            return AsyncDatabase.supply(task).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new Busy();
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Busy();
+        }
+    }
+
+    static BookQuery query(Map<String, String> params) {
+        return new BookQuery(params.get("q"),
+                enumParam(BookQuery.Mode.class, params.get("mode"), BookQuery.Mode.PREFIX),
+                enumParam(BookQuery.Availability.class, params.get("availability"), BookQuery.Availability.ALL),
+                enumParam(BookQuery.Sort.class, params.get("sort"), BookQuery.Sort.ID),
+                Boolean.parseBoolean(params.get("desc")));
+    }
+
+    // The keyset of the page after the book: its id, followed for other orders by a colon and its sort value, so the
+    // next page starts in the right place even if that book is deleted in between.
+    private static String cursor(BookQuery query, Book last) {
+        switch (query.getSort()) {
+            case TITLE:
+                return last.getId() + ":" + last.getTitle();
+            case AUTHOR:
+                return last.getId() + ":" + last.getAuthor();
+            case AVAILABLE:
+                return last.getId() + ":" + last.isAvailable();
+            default:
+                return String.valueOf(last.getId());
+        }
+    }
+
+    // The anchor a cursor stands for; only its id and the query's sort value are filled in. A bare id for an order
+    // other than by id, as in a hand-written link, is resolved by reading that book.
+    private Book anchor(BookQuery query, String after) throws SQLException {
+        if (after == null || after.isEmpty()) {
+            return null;
+        }
+        int colon = after.indexOf(':');
+        int id = Integer.parseInt(colon < 0 ? after : after.substring(0, colon));
+        String value = colon < 0 ? null : after.substring(colon + 1);
+        if (value == null && query.getSort() != BookQuery.Sort.ID) {
+            Book book = database(() -> books.findById(id));
+            if (book == null) {
+                throw new IllegalArgumentException("No book " + id + " to page after; use the next cursor of the previous page");
+            }
+            return book;
+        }
+        switch (query.getSort()) {
+            case TITLE:
+                return new Book(id, value, "", false);
+            case AUTHOR:
+                return new Book(id, "", value, false);
+            case AVAILABLE:
+                return new Book(id, "", "", Boolean.parseBoolean(value));
+            default:
+                return new Book(id, "", "", false);
+        }
+    }
+
+    private static <E extends Enum<E>> E enumParam(Class<E> type, String value, E defaultValue) {
+        // valueOf throws IllegalArgumentException for unknown names, which becomes a 400
+        return value == null || value.isEmpty() ? defaultValue : Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+    }
+
+    private static int limit(Map<String, String> params) {
+        int limit = intParam(params, "limit", 50);
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        return limit;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    static Map<String, String> parameters(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw new MethodNotAllowed(expected);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static class Busy extends RuntimeException {
+    }
+
+    private static class MethodNotAllowed extends RuntimeException {
+        MethodNotAllowed(String allowed) {
+            super(allowed);
+        }
+    }
+
+    // Serves on library.server.host (127.0.0.1) and library.server.port (8080) until the process is stopped.
+    // The schema is migrated first, as in the desktop client.
+    public static void main(String[] args) {
+        // The server writes the headers and the body separately; with Nagle's algorithm on, the body then waits for
+        // the client's delayed ACK, adding about 40 ms to every keep-alive request. Read once when the server starts.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        try {
+            LibraryProperties.load();
+            Metrics.registerMBean();
+            DatabaseManager.migrate();
+            DatabaseManager.getPool().fill();
+            InetSocketAddress address = new InetSocketAddress(System.getProperty("library.server.host", "127.0.0.1"),
+                    Integer.getInteger("library.server.port", 8080));
+            CatalogueServer server = new CatalogueServer(address, BookRepository.shared(), BookChangeFeed.shared(),
+                    new CirculationService(), new UserService());
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                DatabaseManager.shutdown();
+            }, "library-http-shutdown"));
+            LOG.info("Library catalogue served on http://" + address.getHostString() + ":" + server.getPort() + "/api/");
+        } catch (IOException | SQLException | RuntimeException e) {
+            LOG.log(Level.SEVERE, "Could not start the catalogue server", e);
+            DatabaseManager.shutdown();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.library.server;
+
+import org.library.book.Book;
+import org.library.loan.Loan;
+
+import java.util.List;
+
+// The few JSON shapes the HTTP API returns, written by hand to keep the jar free of a JSON library.
+final class Json {
+    private Json() {
+    }
+
+    static String book(Book book) {
+        return appendBook(new StringBuilder(96), book).toString();
+    }
+
+    // {"books":[...],"next":"cursor"} where next is the keyset for the following page, or null after the last one.
+    static String page(List<Book> books, String next) {
+        StringBuilder json = new StringBuilder(64 + books.size() * 96).append("{\"books\":[");
+        for (int i = 0; i < books.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendBook(json, books.get(i));
+        }
+        json.append("],\"next\":");
+        if (next != null) {
+            appendString(json, next);
+        } else {
+            json.append("null");
+        }
+        return json.append('}').toString();
+    }
+
+    static String loans(List<Loan> loans) {
+        StringBuilder json = new StringBuilder(32 + loans.size() * 128).append("{\"loans\":[");
+        for (int i = 0; i < loans.size(); i++) {
+            Loan loan = loans.get(i);
+            json.append(i > 0 ? ",{" : "{")
+                    .append("\"id\":").append(loan.getId())
+                    .append(",\"bookId\":").append(loan.getBookId())
+                    .append(",\"title\":");
+            appendString(json, loan.getBookTitle());
+            json.append(",\"borrowedAt\":");
+            appendString(json, String.valueOf(loan.getBorrowedAt().toInstant()));
+            json.append(",\"dueAt\":");
+            appendString(json, String.valueOf(loan.getDueAt().toInstant()));
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    static String field(String name, Object value) {
+        StringBuilder json = new StringBuilder("{");
+        appendString(json, name);
+        json.append(':');
+        if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            appendString(json, String.valueOf(value));
+        }
+        return json.append('}').toString();
+    }
+
+    private static StringBuilder appendBook(StringBuilder json, Book book) {
+        json.append("{\"id\":").append(book.getId()).append(",\"title\":");
+        appendString(json, book.getTitle());
+        json.append(",\"author\":");
+        appendString(json, book.getAuthor());
+        return json.append(",\"available\":").append(book.isAvailable()).append('}');
+    }
+
+    static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
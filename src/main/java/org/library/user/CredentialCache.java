@@ -0,0 +1,71 @@
+package org.library.user;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Remembers recent successful logins so repeated ones skip the deliberately slow hash. Only a keyed
+// SHA-256 of the password is kept, under a random key that never leaves the process. An entry is only
+// trusted while the stored hash it was verified against is unchanged, so a password change invalidates it.
+class CredentialCache {
+    private final byte[] key = new byte[32];
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+
+    CredentialCache(int maxEntries, long ttlMillis) {
+        new SecureRandom().nextBytes(key);
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    boolean isVerified(String username, String password, String stored) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(username);
+        }
+        return entry != null
+                && System.currentTimeMillis() - entry.verifiedAt < ttlMillis
+                && entry.stored.equals(stored)
+                && MessageDigest.isEqual(entry.digest, digest(password));
+    }
+
+    void verified(String username, String password, String stored) {
+        Entry entry = new Entry(stored, digest(password));
+        synchronized (this) {
+            entries.put(username, entry);
+        }
+    }
+
+    synchronized void forget(String username) {
+        entries.remove(username);
+    }
+
+    private byte[] digest(String password) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(key);
+            return sha256.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final String stored;
+        private final byte[] digest;
+        private final long verifiedAt = System.currentTimeMillis();
+
+        Entry(String stored, byte[] digest) {
+            this.stored = stored;
+            this.digest = digest;
+        }
+    }
+}
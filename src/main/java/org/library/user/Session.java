@@ -0,0 +1,54 @@
+package org.library.user;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The logged-in user and the ids of the books they currently have on loan. The loan set is loaded once
+// at login and kept up to date by this client's own borrows and returns, so the UI can tell whether
+// the selected book can be returned without asking the database.
+public class Session {
+    private final User user;
+    private final Set<Integer> borrowedBookIds = ConcurrentHashMap.newKeySet();
+
+    public Session(User user, Collection<Integer> borrowedBookIds) {
+        this.user = user;
+        this.borrowedBookIds.addAll(borrowedBookIds);
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public int getUserId() {
+        return user.getId();
+    }
+
+    public boolean isAdmin() {
+        return user.getRole() == Role.ADMIN;
+    }
+
+    public boolean hasBorrowed(int bookId) {
+        return borrowedBookIds.contains(bookId);
+    }
+
+    public Set<Integer> getBorrowedBookIds() {
+        return Collections.unmodifiableSet(borrowedBookIds);
+    }
+
+    public void loanStarted(int bookId) {
+        borrowedBookIds.add(bookId);
+    }
+
+    public void loanEnded(int bookId) {
+        borrowedBookIds.remove(bookId);
+    }
+
+    // Replaces the cached loans, e.g. after the database disagreed with them because the same user
+    // borrowed or returned from another client.
+    public void resetLoans(Collection<Integer> bookIds) {
+        borrowedBookIds.retainAll(bookIds);
+        borrowedBookIds.addAll(bookIds);
+    }
+}
@@ -0,0 +1,44 @@
+package org.library.user;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// SQL for the users table, run on the caller's connection. The password column holds the stored hash.
+public class UserDao {
+    private static final int ID = 1;
+    private static final int USERNAME = 2;
+    private static final int PASSWORD = 3;
+    private static final int ROLE = 4;
+
+    // Returns null if there is no such user.
+    public User findByUsername(Connection conn, String username) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id, username, password, role FROM users WHERE username = ?")) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new User(rs.getInt(ID), rs.getString(USERNAME), rs.getString(PASSWORD), Role.valueOf(rs.getString(ROLE)));
+            }
+        }
+    }
+
+    public void insert(Connection conn, String username, String passwordHash, Role role) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO users (username, password, role) VALUES (?, ?, ?)")) {
+            stmt.setString(1, username);
+            stmt.setString(2, passwordHash);
+            stmt.setString(3, role.name());
+            stmt.executeUpdate();
+        }
+    }
+
+    public void updatePassword(Connection conn, int id, String passwordHash) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE users SET password = ? WHERE id = ?")) {
+            stmt.setString(1, passwordHash);
+            stmt.setInt(2, id);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.library.user;
+
+import org.library.database.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+// Login and registration against the users table. Passwords are stored as PBKDF2 hashes and looked up by the
+// unique username index from db/mysql/V3__users_password_hash.sql.
+public class UserService {
+    private final UserDao dao = new UserDao();
+    private final PasswordHasher hasher;
+    private final CredentialCache verified;
+    // Checked against when the username does not exist, so unknown names take as long as wrong passwords. Hashed
+    // on first use, on the login's background thread, since a service is created with each login window.
+    private volatile String dummyHash;
+
+    public UserService() {
+        this(new PasswordHasher(),
+                Integer.getInteger("library.login.cacheSize", 1000),
+                Long.getLong("library.login.cacheTtlMillis", 60_000));
+    }
+
+    public UserService(PasswordHasher hasher, int cacheSize, long cacheTtlMillis) {
+        this.hasher = hasher;
+        this.verified = new CredentialCache(cacheSize, cacheTtlMillis);
+    }
+
+    // Returns the matching user, or null if the username or password is wrong.
+    public User authenticate(String username, String password) throws SQLException {
+        User user;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            user = dao.findByUsername(conn, username);
+        }
+        if (user == null) {
+            hasher.verify(password, dummyHash());
+            return null;
+        }
+
+        String stored = user.getPassword();
+        if (!verified.isVerified(username, password, stored)) {
+            if (!hasher.verify(password, stored)) {
+                verified.forget(username);
+                return null;
+            }
+            if (hasher.needsRehash(stored)) {
+                stored = hasher.hash(password);
+                try (Connection conn = DatabaseManager.getConnection()) {
+                    dao.updatePassword(conn, user.getId(), stored);
+                }
+                user.setPassword(stored);
+            }
+            verified.verified(username, password, stored);
+        }
+        return user;
+    }
+
+    private String dummyHash() {
+        String hash = dummyHash;
+        if (hash == null) {
+            hash = hasher.hash("");
+            dummyHash = hash;
+        }
+        return hash;
+    }
+
+    // Returns false if the username is taken, as reported by the unique username index.
+    public boolean register(String username, String password, Role role) throws SQLException {
+        String hash = hasher.hash(password);
+        try (Connection conn = DatabaseManager.getConnection()) {
+            dao.insert(conn, username, hash, role);
+            return true;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            return false;
+        } catch (SQLException e) {
+            // Class 23 is an integrity constraint violation, for drivers that do not use the subclass
+            if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                return false;
+            }
+            throw e;
+        }
+    }
+}
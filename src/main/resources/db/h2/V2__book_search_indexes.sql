@@ -0,0 +1,9 @@
+-- Prefix search (LIKE 'term%') on title and author.
+CREATE INDEX idx_books_title ON books (title);
+CREATE INDEX idx_books_author ON books (author);
+
+-- Availability filter, kept in id order for keyset paging.
+CREATE INDEX idx_books_available_id ON books (available, id);
+
+-- No FULLTEXT index as in db/mysql: the embedded backend reports supportsFullText() = false,
+-- so substring search uses LIKE '%term%'.
@@ -0,0 +1,11 @@
+-- Change log read by BookChangeFeed. Every write to books appends the affected id in the same
+-- transaction, so clients can fetch just the rows changed since the last version they saw.
+CREATE TABLE IF NOT EXISTS book_changes (
+    version BIGINT AUTO_INCREMENT PRIMARY KEY,
+    book_id INT NOT NULL,
+    change_type CHAR(1) NOT NULL,
+    changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Pruning of old entries.
+CREATE INDEX idx_book_changes_changed_at ON book_changes (changed_at);
@@ -0,0 +1,7 @@
+-- Sorted keyset paging (ORDER BY title, id and author, id). InnoDB appends the primary key to every
+-- secondary index, so db/mysql needs nothing here; H2 only reads an index in (column, id) order when
+-- the id is part of its definition. H2 does not scan indexes backwards, so descending orders still sort.
+DROP INDEX idx_books_title;
+CREATE INDEX idx_books_title ON books (title, id);
+DROP INDEX idx_books_author;
+CREATE INDEX idx_books_author ON books (author, id);
@@ -0,0 +1,10 @@
+-- Prefix search (LIKE 'term%') on title and author.
+CREATE INDEX idx_books_title ON books (title);
+CREATE INDEX idx_books_author ON books (author);
+
+-- Availability filter, kept in id order for keyset paging.
+CREATE INDEX idx_books_available_id ON books (available, id);
+
+-- Substring search: the ngram parser indexes every 2-character sequence, so
+-- MATCH ... AGAINST ('"term"' IN BOOLEAN MODE) finds the term anywhere in a word.
+CREATE FULLTEXT INDEX ft_books_title_author ON books (title, author) WITH PARSER ngram;
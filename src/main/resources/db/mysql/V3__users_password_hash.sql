@@ -0,0 +1,11 @@
+-- Registration used to allow several accounts with one name; those have to be renamed or removed first, since
+-- login could not tell them apart.
+-- require empty: duplicate usernames must be renamed or removed before the unique index can be added
+SELECT username FROM users GROUP BY username HAVING COUNT(*) > 1 ORDER BY username;
+
+-- Room for PBKDF2 hashes ("pbkdf2-sha256$<iterations>$<salt>$<hash>"). Existing plaintext
+-- passwords keep working and are replaced by a hash on the user's next successful login.
+ALTER TABLE users MODIFY password VARCHAR(255) NOT NULL;
+
+-- Login looks users up by name only; the hash is checked in the application.
+CREATE UNIQUE INDEX uq_users_username ON users (username);
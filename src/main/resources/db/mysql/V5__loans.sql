@@ -0,0 +1,25 @@
+-- Loan history. A row is added when a book is borrowed and only returned_at is filled in later,
+-- so past loans are kept instead of being deleted on return as in borrowed_books.
+CREATE TABLE IF NOT EXISTS loans (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id INT NOT NULL,
+    book_id INT NOT NULL,
+    borrowed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    due_at TIMESTAMP NOT NULL,
+    returned_at TIMESTAMP NULL
+);
+
+-- Per-user history, newest first, paged by id.
+CREATE INDEX idx_loans_user_id ON loans (user_id, id);
+
+-- Finding the open loan of a book on return.
+CREATE INDEX idx_loans_book_returned ON loans (book_id, returned_at);
+
+-- Overdue report: open loans (returned_at IS NULL) are one range, already ordered by due date.
+CREATE INDEX idx_loans_returned_due ON loans (returned_at, due_at);
+
+-- Loans that were open at the time of the migration get the default loan period from now.
+INSERT INTO loans (user_id, book_id, borrowed_at, due_at)
+SELECT user_id, book_id, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP + INTERVAL 14 DAY FROM borrowed_books;
+
+DROP TABLE borrowed_books;
@@ -0,0 +1,157 @@
+package org.library;
+
+import junit.framework.TestCase;
+import org.library.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class RequestExecutorTest extends TestCase {
+    private RequestExecutor executor;
+
+    @Override
+    protected void setUp() {
+        executor = new RequestExecutor("test", 2, 0);
+    }
+
+    public void testRunsNoMoreTasksThanPermits() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            int n = i;
+            tasks.add(executor.submit(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                release.await();
+                running.decrementAndGet();
+                return n;
+            }));
+        }
+        waitFor(() -> executor.getActive() == 2 && executor.getQueued() == 4);
+        assertEquals(Long.valueOf(4), Metrics.gauges().get("test.queued"));
+        assertEquals(Long.valueOf(2), Metrics.gauges().get("test.active"));
+
+        release.countDown();
+        for (int i = 0; i < tasks.size(); i++) {
+            assertEquals(i, (int) tasks.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, peak.get());
+        waitFor(() -> executor.getActive() == 0 && executor.getQueued() == 0);
+        assertTrue(Metrics.latencies().get("test.wait").getCount() >= 6);
+    }
+
+    public void testTimesOutRunningAndQueuedTasks() throws Exception {
+        long timeouts = count("errors.test.timeout");
+        CountDownLatch interrupted = new CountDownLatch(2);
+        List<CompletableFuture<Object>> blocked = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            blocked.add(executor.submit(() -> {
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }, 200));
+        }
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<Object> queued = executor.submit(() -> started.incrementAndGet(), 100);
+
+        assertTimedOut(queued);
+        for (CompletableFuture<Object> task : blocked) {
+            assertTimedOut(task);
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        waitFor(() -> executor.getActive() == 0 && executor.getQueued() == 0);
+        assertEquals(0, started.get());
+        assertEquals(timeouts + 3, count("errors.test.timeout"));
+
+        // The permits are back once the interrupted tasks have finished
+        assertEquals("done", executor.submit(() -> "done").get(5, TimeUnit.SECONDS));
+    }
+
+    public void testTasksTimedOutBeforeStartingLeaveTheQueue() throws Exception {
+        // Two threads where there are no virtual threads, so the queued tasks wait for a thread, not just a permit
+        System.setProperty("library.executor.threads", "2");
+        try {
+            executor = new RequestExecutor("test", 2, 0);
+        } finally {
+            System.clearProperty("library.executor.threads");
+        }
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Object>> slow = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            slow.add(executor.submit(() -> {
+                release.await();
+                return null;
+            }));
+        }
+        List<CompletableFuture<Object>> queued = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            queued.add(executor.submit(() -> "late", 100));
+        }
+        for (CompletableFuture<Object> task : queued) {
+            assertTimedOut(task);
+        }
+        assertEquals(0, executor.getQueued());
+        assertEquals(2, executor.getActive());
+
+        release.countDown();
+        for (CompletableFuture<Object> task : slow) {
+            task.get(5, TimeUnit.SECONDS);
+        }
+        waitFor(() -> executor.getActive() == 0);
+        assertEquals(0, executor.getQueued());
+        assertEquals(Long.valueOf(0), Metrics.gauges().get("test.queued"));
+    }
+
+    public void testCancelledTaskReleasesItsPermit() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CompletableFuture<Object> first = executor.submit(() -> {
+            started.countDown();
+            Thread.sleep(60_000);
+            return null;
+        });
+        CompletableFuture<Object> second = executor.submit(() -> {
+            started.countDown();
+            Thread.sleep(60_000);
+            return null;
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        first.cancel(true);
+        second.cancel(true);
+        assertEquals("done", executor.submit(() -> "done").get(5, TimeUnit.SECONDS));
+    }
+
+    private static void assertTimedOut(CompletableFuture<?> task) throws InterruptedException {
+        try {
+            task.get(5, TimeUnit.SECONDS);
+            fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        } catch (TimeoutException e) {
+            fail("The executor did not time the task out");
+        }
+    }
+
+    private static long count(String counter) {
+        Long value = Metrics.counters().get(counter);
+        return value == null ? 0 : value;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.library.book;
+
+import junit.framework.TestCase;
+import org.library.database.ConnectionPool;
+import org.library.database.DatabaseManager;
+import org.library.database.PoolConfig;
+import org.library.loan.CirculationService;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BookChangeFeedTest extends TestCase {
+    // Two clients of the same database: one writes, the other follows the feed
+    private final BookRepository writer = new BookRepository(100, 60_000, false);
+    private final BookRepository reader = new BookRepository(100, 60_000, false);
+    private final BookChangeFeed feed = new BookChangeFeed(reader, 0, 0);
+    private final List<List<BookChange>> received = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws SQLException {
+        String url = "jdbc:h2:mem:changes-" + getName() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        DatabaseManager.setPool(new ConnectionPool(() -> DriverManager.getConnection(url), new PoolConfig()));
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE books (id INT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), author VARCHAR(255), available BOOLEAN)");
+            stmt.execute("CREATE TABLE loans (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id INT NOT NULL, book_id INT NOT NULL, "
+                    + "borrowed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, due_at TIMESTAMP NOT NULL, returned_at TIMESTAMP NULL)");
+            stmt.execute("CREATE TABLE book_changes (version BIGINT AUTO_INCREMENT PRIMARY KEY, book_id INT NOT NULL, "
+                    + "change_type CHAR(1) NOT NULL, changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+        feed.addListener(received::add);
+    }
+
+    @Override
+    protected void tearDown() {
+        feed.close();
+        DatabaseManager.shutdown();
+    }
+
+    public void testDeliversOnlyChangesAfterTheStartingVersion() throws SQLException {
+        writer.add("Before", "Author");
+        assertEquals(0, feed.poll());
+
+        Book dune = writer.add("Dune", "Herbert");
+        assertEquals(1, feed.poll());
+        BookChange change = received.get(0).get(0);
+        assertEquals(BookChange.Type.INSERT, change.getType());
+        assertEquals("Dune", change.getBook().getTitle());
+        assertEquals(dune.getId(), change.getBookId());
+
+        assertEquals(0, feed.poll());
+        assertEquals(1, received.size());
+    }
+
+    public void testCollapsesChangesPerBookAndUpdatesTheReadersCache() throws SQLException {
+        Book dune = writer.add("Dune", "Herbert");
+        Book emma = writer.add("Emma", "Austen");
+        feed.poll();
+        assertEquals("Dune", reader.findById(dune.getId()).getTitle());
+
+        writer.update(new Book(dune.getId(), "Dune Messiah", "Herbert", true));
+        new CirculationService().borrow(1, dune.getId());
+        writer.delete(emma.getId());
+        assertEquals(2, feed.poll());
+
+        List<BookChange> changes = received.get(0);
+        assertEquals(dune.getId(), changes.get(0).getBookId());
+        assertEquals(BookChange.Type.UPDATE, changes.get(0).getType());
+        assertFalse(changes.get(0).getBook().isAvailable());
+        assertTrue(changes.get(1).isDeleted());
+        // Served from the cache the feed just refreshed
+        assertEquals("Dune Messiah", reader.findById(dune.getId()).getTitle());
+    }
+
+    public void testDeliversChangesCommittedAfterLaterVersions() throws SQLException {
+        feed.poll();
+        try (Connection slow = DatabaseManager.getConnection()) {
+            // The slow transaction logs its change first, so it holds the lower version, but commits last
+            slow.setAutoCommit(false);
+            Book late = new BookDao(false).insert(slow, "Late", "Slow");
+            Book early = writer.add("Early", "Fast");
+            assertEquals(1, feed.poll());
+            assertEquals(early.getId(), received.get(0).get(0).getBookId());
+            assertEquals(1, feed.getMissingCount());
+
+            slow.commit();
+            assertEquals(1, feed.poll());
+            assertEquals(late.getId(), received.get(1).get(0).getBookId());
+            assertEquals("Late", reader.findById(late.getId()).getTitle());
+        }
+        assertEquals(0, feed.poll());
+        assertEquals(2, received.size());
+    }
+
+    public void testGivesUpOnVersionsThatNeverCommit() throws Exception {
+        BookChangeFeed impatient = new BookChangeFeed(reader, 0, 0, 0);
+        impatient.poll();
+        try (Connection aborted = DatabaseManager.getConnection()) {
+            aborted.setAutoCommit(false);
+            new BookDao(false).insert(aborted, "Never", "Rolled Back");
+            writer.add("Kept", "Author");
+            assertEquals(1, impatient.poll());
+            assertEquals(1, impatient.getMissingCount());
+            aborted.rollback();
+        }
+        Thread.sleep(5);
+        writer.add("Next", "Author");
+        assertEquals(1, impatient.poll());
+        assertEquals(0, impatient.getMissingCount());
+        impatient.close();
+    }
+
+    public void testImportedBooksAppearInTheFeed() throws Exception {
+        feed.poll();
+        new BookCsv(2, 100).importBooks(new java.io.StringReader("A,X\nB,Y\nC,Z\n"), count -> { }, () -> false);
+        assertEquals(3, feed.poll());
+        for (BookChange change : received.get(0)) {
+            assertEquals(BookChange.Type.INSERT, change.getType());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.library.book;
+
+import junit.framework.TestCase;
+import org.library.database.ConnectionPool;
+import org.library.database.DatabaseManager;
+import org.library.database.PoolConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BookCsvTest extends TestCase {
+    private final BookCsv csv = new BookCsv(2, 100);
+
+    @Override
+    protected void setUp() throws SQLException {
+        String url = "jdbc:h2:mem:csv-" + getName() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        DatabaseManager.setPool(new ConnectionPool(() -> DriverManager.getConnection(url), new PoolConfig()));
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE books (id INT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), author VARCHAR(255), available BOOLEAN)");
+            stmt.execute("CREATE TABLE book_changes (version BIGINT AUTO_INCREMENT PRIMARY KEY, book_id INT NOT NULL, "
+                    + "change_type CHAR(1) NOT NULL, changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        DatabaseManager.shutdown();
+    }
+
+    public void testImportsInBatchesAndExportsRoundTrip() throws Exception {
+        String input = "title,author,available\n"
+                + "Dune,Frank Herbert,true\r\n"
+                + "\"War, and Peace\",Tolstoy,no\n"
+                + "\"The \"\"Quoted\"\" Book\",\"Multi\nLine\"\n"
+                + "\n"
+                + "Emma,Austen\n";
+        List<Long> progress = new ArrayList<>();
+        assertEquals(4, csv.importBooks(new StringReader(input), progress::add, () -> false));
+        assertEquals("[2, 4]", progress.toString());
+
+        StringWriter out = new StringWriter();
+        assertEquals(4, csv.exportBooks(out, count -> { }, () -> false));
+
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM books");
+        }
+        assertEquals(4, csv.importBooks(new StringReader(out.toString()), count -> { }, () -> false));
+        try (Connection conn = DatabaseManager.getConnection();
+             ResultSet rs = conn.createStatement().executeQuery("SELECT title, author, available FROM books ORDER BY id")) {
+            assertTrue(rs.next());
+            assertEquals("Dune", rs.getString(1));
+            assertTrue(rs.next());
+            assertEquals("War, and Peace", rs.getString(1));
+            assertFalse(rs.getBoolean(3));
+            assertTrue(rs.next());
+            assertEquals("The \"Quoted\" Book", rs.getString(1));
+            assertEquals("Multi\nLine", rs.getString(2));
+            assertTrue(rs.next());
+            assertEquals("Austen", rs.getString(2));
+            assertTrue(rs.getBoolean(3));
+        }
+    }
+
+    public void testCancelKeepsCommittedBatches() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            input.append("Title ").append(i).append(",Author\n");
+        }
+        try {
+            csv.importBooks(new StringReader(input.toString()), count -> { }, () -> true);
+            fail("Expected cancellation");
+        } catch (InterruptedIOException expected) {
+        }
+        try (Connection conn = DatabaseManager.getConnection();
+             ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM books")) {
+            rs.next();
+            assertEquals(2, rs.getInt(1));
+        }
+    }
+
+    public void testRejectsRecordsWithoutAuthor() throws SQLException {
+        try {
+            csv.importBooks(new StringReader("Dune,Herbert\nOrphan\n"), count -> { }, () -> false);
+            fail("Expected a parse error");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Line 2"));
+        }
+    }
+}
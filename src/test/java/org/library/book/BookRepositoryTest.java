@@ -0,0 +1,294 @@
+package org.library.book;
+
+import junit.framework.TestCase;
+import org.library.database.ConnectionPool;
+import org.library.database.DatabaseManager;
+import org.library.database.PoolConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class BookRepositoryTest extends TestCase {
+    private ConnectionPool pool;
+    private BookRepository repository;
+
+    @Override
+    protected void setUp() throws SQLException {
+        String url = "jdbc:h2:mem:repo-" + getName() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;IGNORECASE=TRUE";
+        pool = new ConnectionPool(() -> DriverManager.getConnection(url), new PoolConfig());
+        DatabaseManager.setPool(pool);
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE books (id INT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), author VARCHAR(255), available BOOLEAN)");
+            stmt.execute("CREATE TABLE book_changes (version BIGINT AUTO_INCREMENT PRIMARY KEY, book_id INT NOT NULL, "
+                    + "change_type CHAR(1) NOT NULL, changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("CREATE TABLE loans (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id INT NOT NULL, book_id INT NOT NULL, "
+                    + "borrowed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, due_at TIMESTAMP NOT NULL, returned_at TIMESTAMP NULL)");
+        }
+        repository = new BookRepository(100, 60_000, false);
+    }
+
+    @Override
+    protected void tearDown() {
+        DatabaseManager.shutdown();
+    }
+
+    public void testWritesThroughAndServesRepeatedReadsFromCache() throws SQLException {
+        Book added = repository.add("Dune", "Herbert");
+        long borrows = pool.metrics().getBorrowCount();
+
+        assertEquals("Dune", repository.findById(added.getId()).getTitle());
+        repository.update(new Book(added.getId(), "Dune Messiah", "Herbert", true));
+        assertEquals("Dune Messiah", repository.findById(added.getId()).getTitle());
+        assertEquals(borrows + 1, pool.metrics().getBorrowCount());
+    }
+
+    public void testSharesPageReadsUntilMembershipChanges() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            repository.add("Title " + i, "Author");
+        }
+        List<Book> first = repository.fetchPage(BookQuery.ALL, null, 3);
+        long borrows = pool.metrics().getBorrowCount();
+        assertEquals(3, repository.fetchPage(BookQuery.ALL, null, 3).size());
+        assertEquals(borrows, pool.metrics().getBorrowCount());
+
+        repository.delete(first.get(0).getId());
+        List<Book> after = repository.fetchPage(BookQuery.ALL, null, 3);
+        assertEquals(first.get(1).getId(), after.get(0).getId());
+        assertNull(repository.findById(first.get(0).getId()));
+    }
+
+    public void testSearchesByPrefixSubstringAndAvailability() throws SQLException {
+        repository.add("The Hobbit", "Tolkien");
+        repository.add("Hobbit Tales", "Someone");
+        Book borrowed = repository.add("Silmarillion", "Tolkien");
+        repository.add("100% Pure", "Unknown_Author");
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE books SET available = false WHERE id = " + borrowed.getId());
+        }
+
+        BookQuery prefix = new BookQuery("Hobbit", BookQuery.Mode.PREFIX, BookQuery.Availability.ALL);
+        assertEquals(1, repository.count(prefix));
+        BookQuery contains = new BookQuery("Hobbit", BookQuery.Mode.CONTAINS, BookQuery.Availability.ALL);
+        assertEquals(2, repository.fetchPage(contains, null, 10).size());
+        BookQuery available = new BookQuery("Tolkien", BookQuery.Mode.PREFIX, BookQuery.Availability.AVAILABLE);
+        assertEquals("The Hobbit", repository.fetchPage(available, null, 10).get(0).getTitle());
+        assertEquals(1, repository.count(available));
+        BookQuery wildcard = new BookQuery("%", BookQuery.Mode.CONTAINS, BookQuery.Availability.ALL);
+        assertEquals(1, repository.count(wildcard));
+    }
+
+    public void testInvalidateForcesReload() throws SQLException {
+        Book added = repository.add("Emma", "Austen");
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE books SET available = false WHERE id = " + added.getId());
+        }
+        assertTrue(repository.findById(added.getId()).isAvailable());
+        repository.invalidate(added.getId());
+        assertFalse(repository.findById(added.getId()).isAvailable());
+    }
+
+    public void testPagesBySortColumnWithKeyset() throws SQLException {
+        String[] authors = {"Carol", "alice", "Bob", "alice", "Dave", "bob", "Alice"};
+        for (int i = 0; i < authors.length; i++) {
+            repository.add("Title " + i, authors[i]);
+        }
+        BookQuery byAuthor = BookQuery.ALL.sortedBy(BookQuery.Sort.AUTHOR, false);
+        assertEquals("alice alice Alice Bob bob Carol Dave", authors(walk(byAuthor, 2)));
+        BookQuery byAuthorDescending = BookQuery.ALL.sortedBy(BookQuery.Sort.AUTHOR, true);
+        assertEquals("Dave Carol bob Bob Alice alice alice", authors(walk(byAuthorDescending, 3)));
+
+        List<Book> descending = walk(BookQuery.ALL.sortedBy(BookQuery.Sort.ID, true), 3);
+        assertEquals(authors.length, descending.get(0).getId());
+        // Ties are listed by id, the same order the client-side comparison gives
+        List<Book> expected = new ArrayList<>(walk(BookQuery.ALL, 10));
+        expected.sort(byAuthor::compare);
+        assertEquals(ids(expected), ids(walk(byAuthor, 2)));
+        assertEquals(expected.get(4).getId(), repository.bookAtOffset(byAuthor, 4).getId());
+        assertNull(repository.bookAtOffset(byAuthor, authors.length));
+        assertEquals(authors.length, repository.count(byAuthor));
+    }
+
+    public void testContinuesAfterADeletedAnchor() throws SQLException {
+        String[] titles = {"Emma", "Dune", "Beloved", "Carrie", "Anna Karenina"};
+        for (String title : titles) {
+            repository.add(title, "Author");
+        }
+        BookQuery byTitle = BookQuery.ALL.sortedBy(BookQuery.Sort.TITLE, false);
+        List<Book> first = repository.fetchPage(byTitle, null, 2);
+        assertEquals("Beloved", first.get(1).getTitle());
+
+        repository.delete(first.get(1).getId());
+        List<Book> next = repository.fetchPage(byTitle, first.get(1), 2);
+        assertEquals(2, next.size());
+        assertEquals("Carrie", next.get(0).getTitle());
+        assertEquals("Dune", next.get(1).getTitle());
+    }
+
+    // Every match, fetched in pages of the given size by keyset.
+    private List<Book> walk(BookQuery query, int pageSize) throws SQLException {
+        List<Book> all = new ArrayList<>();
+        Book after = null;
+        List<Book> page;
+        while (!(page = repository.fetchPage(query, after, pageSize)).isEmpty()) {
+            all.addAll(page);
+            after = page.get(page.size() - 1);
+        }
+        return all;
+    }
+
+    private static String authors(List<Book> books) {
+        StringBuilder text = new StringBuilder();
+        for (Book book : books) {
+            text.append(text.length() == 0 ? "" : " ").append(book.getAuthor());
+        }
+        return text.toString();
+    }
+
+    private static String ids(List<Book> books) {
+        StringBuilder text = new StringBuilder();
+        for (Book book : books) {
+            text.append(book.getId()).append(' ');
+        }
+        return text.toString();
+    }
+
+    public void testBulkWritesRunInOneTransactionEach() throws SQLException {
+        int[] ids = new int[1200];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = repository.add("Title " + i, "Author").getId();
+        }
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE books SET available = false WHERE id IN (" + ids[0] + ", " + ids[1] + ")");
+            stmt.executeUpdate("INSERT INTO loans (user_id, book_id, due_at) VALUES (1, " + ids[0] + ", CURRENT_TIMESTAMP)");
+        }
+        long changes = changeCount();
+        long borrows = pool.metrics().getBorrowCount();
+
+        // Books already in the requested state, or on loan, are left alone
+        assertEquals(ids.length - 2, repository.setAvailable(ids, false));
+        assertEquals(ids.length - 1, repository.setAvailable(ids, true));
+        assertFalse(repository.findById(ids[0]).isAvailable());
+        assertTrue(repository.findById(ids[1]).isAvailable());
+
+        int[] renamed = {ids[2], ids[3], -1};
+        assertEquals(2, repository.renameAuthor(renamed, "Someone Else"));
+        assertEquals(0, repository.renameAuthor(renamed, "Someone Else"));
+        assertEquals("Someone Else", repository.findById(ids[3]).getAuthor());
+
+        assertEquals(ids.length, repository.deleteAll(ids));
+        assertEquals(0, repository.count(BookQuery.ALL));
+        assertNull(repository.findById(ids[5]));
+        // One connection per bulk write and one per uncached read
+        assertEquals(borrows + 5 + 5, pool.metrics().getBorrowCount());
+        assertEquals(changes + (ids.length - 2) + (ids.length - 1) + 2 + ids.length, changeCount());
+    }
+
+    public void testDictionaryFollowsWrites() throws Exception {
+        Book dune = repository.add("Dune", "Herbert");
+        repository.add("Emma", "Austen");
+        BookDictionary dictionary = repository.getDictionary();
+        // Empty until loaded, then kept up to date by each write
+        assertTrue(dictionary.complete("Du", 5).isEmpty());
+        dictionary.load();
+        assertEquals("[Dune]", dictionary.completeTitles("du", 5).toString());
+
+        Book messiah = repository.add("Dune Messiah", "Herbert");
+        assertEquals("[Dune, Dune Messiah]", dictionary.completeTitles("Dune", 5).toString());
+        repository.update(new Book(dune.getId(), "Dune", "Frank Herbert", true));
+        assertEquals("[Frank Herbert]", dictionary.completeAuthors("F", 5).toString());
+        // Still the author of the other book
+        assertEquals("[Herbert]", dictionary.completeAuthors("He", 5).toString());
+        repository.delete(messiah.getId());
+        assertTrue(dictionary.completeAuthors("He", 5).isEmpty());
+        // Authors first, then titles
+        repository.add("Austerlitz", "Sebald");
+        assertEquals("[Austen, Austerlitz]", dictionary.complete("aust", 5).toString());
+
+        // Bulk writes too
+        repository.renameAuthor(new int[]{dune.getId()}, "F. Herbert");
+        assertEquals("[F. Herbert]", dictionary.completeAuthors("F", 5).toString());
+        repository.deleteAll(new int[]{dune.getId()});
+        assertTrue(dictionary.completeTitles("Du", 5).isEmpty());
+    }
+
+    public void testDictionaryFollowsOtherClientsThroughTheFeed() throws Exception {
+        Book dune = repository.add("Dune", "Herbert");
+        BookChangeFeed feed = new BookChangeFeed(repository, 0, 0);
+        BookDictionary dictionary = repository.getDictionary();
+        dictionary.follow(feed).get(5, TimeUnit.SECONDS);
+        assertEquals("[Dune]", dictionary.completeTitles("du", 5).toString());
+
+        BookRepository otherClient = new BookRepository(100, 60_000, false);
+        otherClient.add("Neuromancer", "Gibson");
+        otherClient.update(new Book(dune.getId(), "Dune Part One", "Herbert", true));
+        feed.poll();
+        assertEquals("[Gibson]", dictionary.completeAuthors("gi", 5).toString());
+        assertEquals("[Dune Part One]", dictionary.completeTitles("du", 5).toString());
+
+        // The feed's echo of a local write is not counted twice, so one delete takes the title out again
+        Book emma = repository.add("Emma", "Austen");
+        feed.poll();
+        repository.delete(emma.getId());
+        assertTrue(dictionary.completeTitles("Em", 5).isEmpty());
+        feed.poll();
+        assertTrue(dictionary.completeTitles("Em", 5).isEmpty());
+    }
+
+    public void testDictionaryHandlesSparseAndLargeIds() throws Exception {
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO books (id, title, author, available) VALUES (50000000, 'Dune', 'Herbert', true), "
+                    + "(" + (Integer.MAX_VALUE - 1) + ", 'Emma', 'Austen', true)");
+        }
+        BookDictionary dictionary = repository.getDictionary();
+        dictionary.load();
+        assertEquals("[Dune]", dictionary.completeTitles("du", 5).toString());
+
+        repository.update(new Book(Integer.MAX_VALUE - 1, "Emma", "Jane Austen", true));
+        assertEquals("[Jane Austen]", dictionary.completeAuthors("ja", 5).toString());
+        dictionary.written(new Book(Integer.MAX_VALUE, "Zazie", "Queneau", true));
+        dictionary.written(new Book(7, "Beloved", "Morrison", true));
+        assertEquals("[Zazie]", dictionary.completeTitles("za", 5).toString());
+        assertEquals("[Beloved]", dictionary.completeTitles("be", 5).toString());
+
+        repository.deleteAll(new int[]{7, 50000000, Integer.MAX_VALUE - 1});
+        assertTrue(dictionary.complete("e", 5).isEmpty());
+        assertTrue(dictionary.complete("du", 5).isEmpty());
+        dictionary.written(new Book(7, "Beloved", "Morrison", true));
+        assertEquals("[Beloved]", dictionary.completeTitles("be", 5).toString());
+        assertEquals("[Zazie]", dictionary.completeTitles("za", 5).toString());
+    }
+
+    public void testDictionaryKeepsEditsMadeDuringItsLoad() throws Exception {
+        Book dune = repository.add("Dune", "Herbert");
+        BookDictionary[] dictionary = new BookDictionary[1];
+        // Another write lands after the scan has read its page
+        dictionary[0] = new BookDictionary(new BookDao(false) {
+            @Override
+            public List<Book> fetchPage(Connection conn, BookQuery query, Book after, int limit) throws SQLException {
+                List<Book> page = super.fetchPage(conn, query, after, limit);
+                if (after == null) {
+                    dictionary[0].written(new Book(dune.getId(), "Dune Messiah", "Herbert", true));
+                    dictionary[0].written(new Book(dune.getId() + 1, "Emma", "Austen", true));
+                }
+                return page;
+            }
+        });
+        dictionary[0].load();
+        assertEquals("[Dune Messiah]", dictionary[0].completeTitles("du", 5).toString());
+        assertEquals("[Emma]", dictionary[0].completeTitles("em", 5).toString());
+    }
+
+    private static long changeCount() throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM book_changes")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
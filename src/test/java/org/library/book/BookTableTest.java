@@ -0,0 +1,59 @@
+package org.library.book;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class BookTableTest extends TestCase {
+    private final StringDictionary authors = new StringDictionary();
+
+    public void testStoresRowsColumnarWithSharedAuthors() {
+        BookTable table = BookTable.of(Arrays.asList(
+                new Book(3, "Emma", "Austen", true),
+                new Book(5, "Persuasion", "Austen", false),
+                new Book(8, "Dune", "Herbert", true)), authors);
+        BookTable other = BookTable.of(Arrays.asList(new Book(9, "Sanditon", "Austen", true)), authors);
+
+        assertEquals(3, table.size());
+        assertEquals(5, table.getId(1));
+        assertEquals("Persuasion", table.getTitle(1));
+        assertEquals("Austen", table.getAuthor(1));
+        assertFalse(table.isAvailable(1));
+        assertTrue(table.isAvailable(2));
+        assertEquals("Austen", other.getAuthor(0));
+        assertEquals(2, authors.size());
+    }
+
+    public void testFindsUpdatesAndRemovesRowsById() {
+        BookTable table = new BookTable(authors, 1);
+        for (int id = 1; id <= 10; id++) {
+            table.add(new Book(id * 2, "Title " + id, "Author " + id % 3, id % 2 == 0));
+        }
+        assertEquals(4, table.indexOf(10));
+        assertEquals(-1, table.indexOf(11));
+        assertEquals(-1, table.indexOf(0));
+
+        table.set(4, new Book(10, "Renamed", "Someone", false));
+        assertEquals("Renamed", table.getBook(4).getTitle());
+        assertEquals("Someone", table.getAuthor(4));
+
+        table.remove(4);
+        assertEquals(9, table.size());
+        assertEquals(-1, table.indexOf(10));
+        assertEquals(12, table.getId(4));
+        // Availability shifted along with the other columns: id 12 is book 6, which is even
+        assertTrue(table.isAvailable(4));
+        assertFalse(table.isAvailable(5));
+        assertEquals(20, table.getId(8));
+
+        table.insert(1, new Book(3, "Inserted", "Author 1", false));
+        assertEquals(10, table.size());
+        assertEquals(2, table.getId(0));
+        assertEquals(3, table.getId(1));
+        assertFalse(table.isAvailable(1));
+        assertEquals(4, table.getId(2));
+        assertTrue(table.isAvailable(2));
+        assertEquals(2, table.insertionPoint(4));
+        assertEquals(3, table.insertionPoint(5));
+    }
+}
@@ -0,0 +1,55 @@
+package org.library.book;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class PrefixIndexTest extends TestCase {
+    private final PrefixIndex index = new PrefixIndex();
+
+    public void testCompletesByPrefixIgnoringCase() {
+        index.replaceAll(Arrays.asList("Tolkien", "tolstoy", "Twain", "TOLKIEN", "Austen", null, "", "Tolkien"));
+
+        assertEquals(4, index.size());
+        assertEquals("[Tolkien, tolstoy]", index.complete("tol", 10).toString());
+        assertEquals("[Tolkien]", index.complete("TOLK", 10).toString());
+        assertEquals("[Tolkien]", index.complete("Tol", 1).toString());
+        assertEquals("[Austen]", index.complete("a", 10).toString());
+        assertTrue(index.complete("Tolkiens", 10).isEmpty());
+        assertTrue(index.complete("", 10).isEmpty());
+        assertTrue(index.complete("z", 10).isEmpty());
+    }
+
+    public void testKeepsValuesUntilTheirLastOccurrenceIsRemoved() {
+        index.add("Herbert");
+        index.add("herbert");
+        index.add("Heller");
+        index.add("Adams");
+        assertEquals("[Heller, Herbert]", index.complete("he", 10).toString());
+
+        index.remove("Herbert");
+        assertEquals("[Heller, Herbert]", index.complete("he", 10).toString());
+        index.remove("HERBERT");
+        assertEquals("[Heller]", index.complete("he", 10).toString());
+        index.remove("Nobody");
+        assertEquals(2, index.size());
+        assertEquals("[Adams]", index.complete("Ad", 10).toString());
+    }
+
+    public void testAppliesABatchOfEdits() {
+        index.replaceAll(Arrays.asList("Austen", "Gibson", "Herbert", "Herbert", "Tolkien"));
+        index.update(Arrays.asList("herbert", "Gibson", "Nobody", "Tolkien"),
+                Arrays.asList("Adams", "Zola", "Tolkien", "Heller", "adams"));
+
+        assertEquals(6, index.size());
+        assertEquals("[Adams, Austen]", index.complete("a", 10).toString());
+        assertTrue(index.complete("gib", 10).isEmpty());
+        assertEquals("[Heller, Herbert]", index.complete("he", 10).toString());
+        index.remove("Herbert");
+        assertEquals("[Heller]", index.complete("he", 10).toString());
+        index.remove("Adams");
+        assertEquals("[Adams, Austen]", index.complete("a", 10).toString());
+        assertEquals("[Tolkien]", index.complete("t", 10).toString());
+        assertEquals("[Zola]", index.complete("z", 10).toString());
+    }
+}
@@ -0,0 +1,246 @@
+package org.library.database;
+
+import junit.framework.TestCase;
+import org.library.metrics.Metrics;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionPoolTest extends TestCase {
+    private final AtomicInteger opened = new AtomicInteger();
+    private ConnectionPool pool;
+
+    private ConnectionPool newPool(int min, int max) {
+        PoolConfig config = new PoolConfig();
+        config.setMinSize(min);
+        config.setMaxSize(max);
+        config.setBorrowTimeoutMillis(200);
+        config.setIdleTimeoutMillis(0);
+        config.setEvictionIntervalMillis(0);
+        pool = new ConnectionPool(() -> {
+            opened.incrementAndGet();
+            return DriverManager.getConnection("jdbc:h2:mem:pool-" + getName() + ";DB_CLOSE_DELAY=-1");
+        }, config);
+        return pool;
+    }
+
+    @Override
+    protected void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    public void testReusesPhysicalConnection() throws SQLException {
+        newPool(0, 2);
+        for (int i = 0; i < 5; i++) {
+            try (Connection conn = pool.getConnection()) {
+                assertTrue(conn.isValid(1));
+            }
+        }
+        assertEquals(1, opened.get());
+        assertEquals(5, pool.metrics().getBorrowCount());
+        assertEquals(1, pool.metrics().getIdle());
+        assertEquals(0, pool.metrics().getActive());
+    }
+
+    public void testBorrowTimesOutWhenExhausted() throws SQLException {
+        newPool(0, 1);
+        try (Connection ignored = pool.getConnection()) {
+            assertEquals(1, pool.metrics().getActive());
+            try {
+                pool.getConnection();
+                fail("Expected borrow timeout");
+            } catch (SQLTransientConnectionException expected) {
+                assertEquals(1, pool.metrics().getTimeoutCount());
+            }
+        }
+        pool.getConnection().close();
+    }
+
+    public void testClosedLeaseCannotBeUsed() throws SQLException {
+        newPool(0, 1);
+        Connection conn = pool.getConnection();
+        conn.close();
+        assertTrue(conn.isClosed());
+        try {
+            conn.createStatement();
+            fail("Expected returned connection to be unusable");
+        } catch (SQLException expected) {
+        }
+    }
+
+    public void testDiscardsInvalidConnectionOnBorrow() throws SQLException {
+        newPool(0, 1);
+        Connection conn = pool.getConnection();
+        conn.unwrap(Connection.class).close();
+        conn.close();
+
+        try (Connection fresh = pool.getConnection()) {
+            assertTrue(fresh.isValid(1));
+        }
+        assertEquals(2, opened.get());
+        assertEquals(1, pool.metrics().getDestroyedCount());
+    }
+
+    public void testRollsBackUncommittedWorkOnReturn() throws SQLException {
+        newPool(0, 1);
+        try (Connection conn = pool.getConnection()) {
+            conn.createStatement().execute("CREATE TABLE t (id INT)");
+            conn.setAutoCommit(false);
+            conn.createStatement().executeUpdate("INSERT INTO t VALUES (1)");
+        }
+        try (Connection conn = pool.getConnection()) {
+            assertTrue(conn.getAutoCommit());
+            java.sql.ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM t");
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    public void testEvictsIdleConnectionsDownToMinimum() throws SQLException {
+        newPool(1, 3);
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        Connection c = pool.getConnection();
+        a.close();
+        b.close();
+        c.close();
+        assertEquals(3, pool.metrics().getIdle());
+
+        pool.evictIdle();
+        assertEquals(1, pool.metrics().getIdle());
+        assertEquals(2, pool.metrics().getDestroyedCount());
+    }
+
+    public void testFillRacingWithBorrowStaysWithinMaxSize() throws Exception {
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PoolConfig config = new PoolConfig();
+        config.setMinSize(1);
+        config.setMaxSize(1);
+        config.setBorrowTimeoutMillis(5000);
+        config.setEvictionIntervalMillis(0);
+        pool = new ConnectionPool(() -> {
+            if (opened.incrementAndGet() == 1) {
+                creating.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return DriverManager.getConnection("jdbc:h2:mem:pool-" + getName() + ";DB_CLOSE_DELAY=-1");
+        }, config);
+
+        Thread filler = new Thread(() -> {
+            try {
+                pool.fill();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        filler.start();
+        assertTrue(creating.await(5, TimeUnit.SECONDS));
+        Thread borrower = new Thread(() -> {
+            try {
+                pool.getConnection().close();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        borrower.start();
+        // The borrower waits for the connection being opened instead of opening a second one
+        Thread.sleep(100);
+        release.countDown();
+        filler.join(5000);
+        borrower.join(5000);
+
+        assertEquals(1, opened.get());
+        assertEquals(1, pool.metrics().getBorrowCount());
+        assertEquals(1, pool.metrics().getIdle());
+    }
+
+    public void testReusesPreparedStatementsAcrossLeases() throws SQLException {
+        newPool(0, 1);
+        PreparedStatement physical;
+        try (Connection conn = pool.getConnection()) {
+            PreparedStatement first = conn.prepareStatement("SELECT ?");
+            physical = first.unwrap(PreparedStatement.class);
+            first.setInt(1, 1);
+            first.executeQuery().close();
+            assertSame(conn, first.getConnection());
+            first.close();
+            assertTrue(first.isClosed());
+        }
+        try (Connection conn = pool.getConnection();
+             PreparedStatement again = conn.prepareStatement("SELECT ?");
+             PreparedStatement concurrent = conn.prepareStatement("SELECT ?")) {
+            assertSame(physical, again.unwrap(PreparedStatement.class));
+            assertNotSame(again.unwrap(PreparedStatement.class), concurrent.unwrap(PreparedStatement.class));
+            // Parameters from the previous use were cleared
+            try {
+                again.executeQuery();
+                fail("Expected unbound parameter");
+            } catch (SQLException expected) {
+            }
+        }
+        assertEquals(1, pool.metrics().getStatementHits());
+        assertEquals(2, pool.metrics().getStatementMisses());
+    }
+
+    public void testReconfiguredStatementIsNotCached() throws SQLException {
+        newPool(0, 1);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT 1")) {
+            stmt.setMaxRows(1);
+        }
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT 1")) {
+            assertEquals(0, stmt.getMaxRows());
+        }
+        assertEquals(0, pool.metrics().getStatementHits());
+    }
+
+    public void testTimesQueriesByType() throws SQLException {
+        newPool(0, 1);
+        Metrics.reset();
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE books (id INT PRIMARY KEY, title VARCHAR(50))");
+            stmt.executeUpdate("INSERT INTO books VALUES (1, 'Dune'), (2, 'Emma')");
+            try (PreparedStatement select = conn.prepareStatement("SELECT id FROM books WHERE id > ?")) {
+                select.setInt(1, 0);
+                select.executeQuery().close();
+            }
+            try {
+                stmt.executeQuery("SELECT * FROM missing");
+                fail("Expected an unknown table");
+            } catch (SQLException expected) {
+            }
+        }
+        assertEquals(1, Metrics.latencies().get("query.select.books").getCount());
+        assertEquals(1, Metrics.latencies().get("query.insert.books").getCount());
+        assertEquals(Long.valueOf(1), Metrics.counters().get("errors.select.missing"));
+        assertTrue(Metrics.latencies().get("pool.acquire").getCount() > 0);
+    }
+
+    public void testHandsOutPlainStatementsWhenMetricsAreDisabled() throws SQLException {
+        PoolConfig config = new PoolConfig();
+        config.setStatementCacheSize(0);
+        pool = new ConnectionPool(() -> DriverManager.getConnection("jdbc:h2:mem:pool-" + getName()), config);
+        Metrics.setEnabled(false);
+        try (Connection conn = pool.getConnection(); PreparedStatement stmt = conn.prepareStatement("SELECT 1")) {
+            assertFalse(Proxy.isProxyClass(stmt.getClass()));
+        } finally {
+            Metrics.setEnabled(true);
+        }
+    }
+}
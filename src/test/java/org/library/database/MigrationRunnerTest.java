@@ -0,0 +1,94 @@
+package org.library.database;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class MigrationRunnerTest extends TestCase {
+    private Connection conn;
+
+    @Override
+    protected void setUp() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:h2:mem:migrations-" + getName() + ";MODE=MySQL");
+    }
+
+    @Override
+    protected void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    public void testStopsAtDuplicateUsernamesBeforeAddingTheUniqueIndex() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(50) NOT NULL, "
+                    + "password VARCHAR(50) NOT NULL, role VARCHAR(10) NOT NULL)");
+            stmt.execute("INSERT INTO users (username, password, role) VALUES ('alice', 'a', 'USER'), "
+                    + "('bob', 'b', 'USER'), ('alice', 'c', 'ADMIN')");
+        }
+        MigrationRunner runner = new MigrationRunner(new EmbeddedStorage().getMigrationLocation());
+        try {
+            runner.migrate(conn);
+            fail("Expected the migration to stop");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Migration V3__users_password_hash.sql cannot run: "));
+            assertTrue(e.getMessage(), e.getMessage().endsWith(": alice"));
+        }
+        assertEquals(2, runner.currentVersion(conn));
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("UPDATE users SET username = 'alice2' WHERE password = 'c'");
+        }
+        assertTrue(runner.migrate(conn) > 0);
+    }
+
+    public void testAppliesPendingScriptsOnce() throws SQLException {
+        MigrationRunner runner = new MigrationRunner("db/test");
+        assertEquals(0, runner.currentVersion(conn));
+        assertEquals(2, runner.migrate(conn));
+        assertEquals(2, runner.currentVersion(conn));
+        assertEquals(0, runner.migrate(conn));
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM books")) {
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT description FROM schema_version WHERE version = 2")) {
+            rs.next();
+            assertEquals("book title index", rs.getString(1));
+        }
+    }
+
+    public void testSplitsStatementsAndSkipsComments() {
+        List<String> statements = MigrationRunner.statements("-- comment\nCREATE TABLE t (\n  id INT\n);\n\nDROP TABLE t;\n");
+        assertEquals(Arrays.asList("CREATE TABLE t (\nid INT\n)", "DROP TABLE t"), statements);
+        assertEquals(Collections.singletonList("-- require empty: none\nSELECT 1"),
+                MigrationRunner.statements("-- require empty: none\nSELECT 1;\n"));
+    }
+
+    public void testIndexListsEveryScript() throws SQLException, URISyntaxException {
+        for (String location : new String[]{"db/mysql", "db/h2"}) {
+            File dir = new File(getClass().getClassLoader().getResource(location).toURI());
+            List<String> onDisk = new ArrayList<>();
+            for (String name : dir.list()) {
+                if (name.endsWith(".sql")) {
+                    onDisk.add(name);
+                }
+            }
+            List<String> listed = new ArrayList<>(new MigrationRunner(location).scripts());
+            Collections.sort(onDisk);
+            Collections.sort(listed);
+            assertEquals(location, onDisk, listed);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.library.database;
+
+import junit.framework.TestCase;
+import org.library.book.Book;
+import org.library.book.BookCsv;
+import org.library.book.BookQuery;
+import org.library.book.BookRepository;
+import org.library.loan.CirculationResult;
+import org.library.loan.CirculationService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class StorageBackendTest extends TestCase {
+    private File dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("library-embedded").toFile();
+        System.setProperty("library.embedded.path", new File(dir, "library").getPath());
+    }
+
+    @Override
+    protected void tearDown() {
+        DatabaseManager.shutdown();
+        System.clearProperty("library.embedded.path");
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    public void testBackendsAreFoundByName() {
+        assertTrue(StorageBackend.forName("embedded") instanceof EmbeddedStorage);
+        assertTrue(StorageBackend.forName("MySQL") instanceof MySqlStorage);
+        try {
+            StorageBackend.forName("oracle");
+            fail("Expected an unknown backend");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testEmbeddedDatabaseIsMigratedAndKeptOnDisk() throws SQLException {
+        StorageBackend backend = new EmbeddedStorage();
+        open(backend);
+        try (Connection conn = DatabaseManager.getConnection()) {
+            assertEquals(6, new MigrationRunner(backend.getMigrationLocation()).migrate(conn));
+        }
+        BookRepository books = new BookRepository(100, 0, backend.supportsFullText());
+        Book dune = books.add("Dune", "Frank Herbert");
+        assertEquals(CirculationResult.SUCCESS, new CirculationService().borrow(1, dune.getId()));
+        DatabaseManager.shutdown();
+
+        open(backend);
+        try (Connection conn = DatabaseManager.getConnection()) {
+            assertEquals(0, new MigrationRunner(backend.getMigrationLocation()).migrate(conn));
+        }
+        assertEquals(1, books.count(new BookQuery("herb", BookQuery.Mode.CONTAINS, BookQuery.Availability.BORROWED)));
+        assertFalse(books.findById(dune.getId()).isAvailable());
+    }
+
+    public void testEmbeddedDatabaseExportsCsvWithItsFetchSize() throws Exception {
+        StorageBackend backend = new EmbeddedStorage();
+        open(backend);
+        try (Connection conn = DatabaseManager.getConnection()) {
+            new MigrationRunner(backend.getMigrationLocation()).migrate(conn);
+        }
+        BookRepository books = new BookRepository(100, 0, backend.supportsFullText());
+        for (int i = 0; i < 3; i++) {
+            books.add("Title " + i, "Author");
+        }
+        StringWriter out = new StringWriter();
+        assertEquals(3, new BookCsv(backend).exportBooks(out, count -> { }, () -> false));
+        assertTrue(out.toString(), out.toString().startsWith(BookCsv.HEADER + "\n"));
+        assertEquals(4, out.toString().split("\n").length);
+        assertEquals(Integer.MIN_VALUE, new MySqlStorage().getStreamingFetchSize());
+    }
+
+    private static void open(StorageBackend backend) {
+        DatabaseManager.setPool(new ConnectionPool(backend.connectionFactory(), new PoolConfig()));
+    }
+}
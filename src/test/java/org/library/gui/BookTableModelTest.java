@@ -0,0 +1,273 @@
+package org.library.gui;
+
+import junit.framework.TestCase;
+import org.library.book.Book;
+import org.library.book.BookChange;
+import org.library.book.BookPageSource;
+import org.library.book.BookQuery;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class BookTableModelTest extends TestCase {
+    private static final int BOOKS = 1000;
+
+    private final AtomicInteger pageFetches = new AtomicInteger();
+    private final AtomicInteger offsetLookups = new AtomicInteger();
+    private final AtomicInteger counts = new AtomicInteger();
+    private final Set<Integer> deleted = new HashSet<>();
+    private final Map<Integer, Book> edited = new HashMap<>();
+
+    private final BookPageSource source = new BookPageSource() {
+        @Override
+        public int count(BookQuery query) {
+            counts.incrementAndGet();
+            int matching = 0;
+            for (int id = 1; id <= BOOKS; id++) {
+                if (!deleted.contains(id) && query.matches(current(id))) {
+                    matching++;
+                }
+            }
+            return matching;
+        }
+
+        @Override
+        public List<Book> fetchPage(BookQuery query, Book after, int limit) {
+            pageFetches.incrementAndGet();
+            if (!query.isIdOrder()) {
+                List<Book> sorted = sorted(query);
+                int from = 0;
+                while (after != null && from < sorted.size() && query.compare(sorted.get(from), after) <= 0) {
+                    from++;
+                }
+                return new ArrayList<>(sorted.subList(from, Math.min(sorted.size(), from + limit)));
+            }
+            List<Book> page = new ArrayList<>();
+            for (int id = after == null ? 1 : after.getId() + 1; id <= BOOKS && page.size() < limit; id++) {
+                Book book = current(id);
+                if (!deleted.contains(id) && query.matches(book)) {
+                    page.add(book);
+                }
+            }
+            return page;
+        }
+
+        @Override
+        public Book bookAtOffset(BookQuery query, int offset) {
+            offsetLookups.incrementAndGet();
+            return query.isIdOrder() ? current(offset + 1) : sorted(query).get(offset);
+        }
+    };
+
+    public void testLoadsPagesLazilyAndPrefetchesNext() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        onEdt(model::reload);
+        waitFor(() -> model.getRowCount() == BOOKS && model.getBookAt(0) != null && pageFetches.get() == 2
+                && model.getBookAt(19) != null);
+        assertEquals(1, model.getBookAt(0).getId());
+        assertEquals(20, model.getBookAt(19).getId());
+        assertEquals(0, offsetLookups.get());
+        Thread.sleep(50);
+        assertEquals("only the first window and its successor are fetched", 2, pageFetches.get());
+    }
+
+    public void testJumpUsesOffsetLookupThenKeyset() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        onEdt(model::reload);
+        waitFor(() -> model.getRowCount() == BOOKS);
+
+        onEdt(() -> model.getValueAt(505, 1));
+        waitFor(() -> model.getBookAt(505) != null && model.getBookAt(515) != null);
+        assertEquals(506, model.getBookAt(505).getId());
+        assertEquals("Title 516", model.getValueAt(515, 1));
+        assertEquals(1, offsetLookups.get());
+    }
+
+    public void testKeepsBoundedNumberOfPages() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        onEdt(model::reload);
+        waitFor(() -> model.getRowCount() == BOOKS);
+
+        for (int row = 0; row < 100; row += 10) {
+            int r = row;
+            waitFor(() -> model.getBookAt(r) != null);
+        }
+        int fetched = pageFetches.get();
+        waitFor(() -> model.getBookAt(0) != null);
+        assertTrue("evicted first page should be fetched again", pageFetches.get() > fetched);
+    }
+
+    public void testAppliesSingleRowChangesWithoutReload() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        onEdt(model::reload);
+        waitFor(() -> model.getRowCount() == BOOKS && model.getBookAt(0) != null && model.getBookAt(10) != null);
+        onEdt(() -> model.bookUpdated(new Book(5, "Changed", "Someone", false)));
+        assertEquals("Changed", model.getValueAt(4, 1));
+        assertEquals("No", model.getValueAt(4, 3));
+
+        onEdt(() -> model.bookInserted(new Book(BOOKS + 1, "New", "Someone", true)));
+        assertEquals(BOOKS + 1, model.getRowCount());
+
+        deleted.add(3);
+        onEdt(() -> model.bookRemoved(3));
+        assertEquals(BOOKS, model.getRowCount());
+        waitFor(() -> model.getBookAt(2) != null);
+        assertEquals(4, model.getBookAt(2).getId());
+        assertEquals("no full reload expected", 1, counts.get());
+    }
+
+    public void testSearchFiltersAndDropsRowsThatStopMatching() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        onEdt(() -> model.setQuery(new BookQuery("", BookQuery.Mode.PREFIX, BookQuery.Availability.AVAILABLE)));
+        waitFor(() -> model.getRowCount() == BOOKS / 2 && model.getBookAt(0) != null);
+        assertEquals(2, model.getBookAt(0).getId());
+
+        deleted.add(2);
+        onEdt(() -> model.bookUpdated(new Book(2, "Title 2", "Author", false)));
+        waitFor(() -> model.getBookAt(0) != null);
+        assertEquals(4, model.getBookAt(0).getId());
+        onEdt(() -> model.bookInserted(new Book(BOOKS + 1, "Borrowed", "Author", false)));
+        assertEquals(BOOKS / 2 - 1, model.getRowCount());
+    }
+
+    public void testAppliesFeedChangesToLoadedRowsAndKnownPositions() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        onEdt(() -> model.setQuery(new BookQuery("", BookQuery.Mode.PREFIX, BookQuery.Availability.AVAILABLE)));
+        waitFor(() -> model.getRowCount() == BOOKS / 2 && model.getBookAt(0) != null && model.getBookAt(10) != null);
+
+        // Book 3 is returned and joins the result between 2 and 4; book 6 is borrowed and leaves it
+        Book returned = edit(new Book(3, "Title 3", "Author", true));
+        Book borrowed = edit(new Book(6, "Title 6", "Author", false));
+        onEdt(() -> model.booksChanged(Arrays.asList(
+                new BookChange(1, 3, BookChange.Type.UPDATE, returned),
+                new BookChange(2, 6, BookChange.Type.UPDATE, borrowed))));
+        assertEquals(BOOKS / 2, model.getRowCount());
+        waitFor(() -> model.getBookAt(1) != null && model.getBookAt(2) != null);
+        assertEquals(3, model.getBookAt(1).getId());
+        assertEquals(4, model.getBookAt(2).getId());
+        assertEquals(8, model.getBookAt(3).getId());
+        assertEquals("no full reload expected", 1, counts.get());
+
+        // Far outside the loaded pages, so only a reload can tell where it belongs
+        Book farAway = edit(new Book(901, "Title 901", "Author", true));
+        onEdt(() -> model.booksChanged(Collections.singletonList(new BookChange(3, 901, BookChange.Type.UPDATE, farAway))));
+        waitFor(() -> counts.get() == 2 && model.getRowCount() == BOOKS / 2 + 1);
+    }
+
+    public void testEditsOutsideLoadedPagesNeedNoReloadWithoutFilter() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        onEdt(model::reload);
+        waitFor(() -> model.getRowCount() == BOOKS && model.getBookAt(0) != null);
+
+        Book renamed = edit(new Book(1, "Renamed", "Author", false));
+        Book farAway = edit(new Book(700, "Elsewhere", "Author", false));
+        onEdt(() -> model.booksChanged(Arrays.asList(
+                new BookChange(1, 1, BookChange.Type.UPDATE, renamed),
+                new BookChange(2, 700, BookChange.Type.UPDATE, farAway),
+                new BookChange(3, BOOKS + 1, BookChange.Type.INSERT, new Book(BOOKS + 1, "New", "Author", true)))));
+        assertEquals("Renamed", model.getValueAt(0, 1));
+        assertEquals(BOOKS + 1, model.getRowCount());
+        assertEquals("no full reload expected", 1, counts.get());
+    }
+
+    public void testSortsByHeaderWithoutCountingAgain() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        BookRowSorter sorter = new BookRowSorter(model);
+        onEdt(model::reload);
+        waitFor(() -> model.getRowCount() == BOOKS && model.getBookAt(0) != null);
+
+        onEdt(() -> sorter.toggleSortOrder(0));
+        assertTrue(model.getQuery().isIdOrder());
+        onEdt(() -> sorter.toggleSortOrder(0));
+        assertEquals(SortOrder.DESCENDING, sorter.getSortKeys().get(0).getSortOrder());
+        waitFor(() -> model.getBookAt(0) != null);
+        assertEquals(BOOKS, model.getBookAt(0).getId());
+        assertEquals(BOOKS, sorter.getViewRowCount());
+
+        // Newest first, so a new book goes to the top
+        onEdt(() -> model.bookInserted(new Book(BOOKS + 1, "New", "Someone", true)));
+        assertEquals(BOOKS + 1, model.getBookAt(0).getId());
+        assertEquals("re-sorting keeps the count", 1, counts.get());
+
+        // A filter keeps the chosen order
+        onEdt(() -> model.setQuery(new BookQuery("", BookQuery.Mode.PREFIX, BookQuery.Availability.AVAILABLE)));
+        assertTrue(model.getQuery().isDescending());
+        waitFor(() -> counts.get() == 2 && model.getBookAt(0) != null);
+        assertEquals(BOOKS, model.getBookAt(0).getId());
+    }
+
+    public void testMovesEditedRowsWithinTheSortOrder() throws Exception {
+        BookTableModel model = new BookTableModel(source, 10, 4);
+        onEdt(model::reload);
+        waitFor(() -> model.getRowCount() == BOOKS);
+        onEdt(() -> model.sortBy(BookQuery.Sort.TITLE, false));
+        waitFor(() -> model.getBookAt(0) != null && model.getBookAt(10) != null);
+        // "Title 1", "Title 10", "Title 100", "Title 1000", "Title 101", ...
+        assertEquals(10, model.getBookAt(1).getId());
+        assertEquals(1000, model.getBookAt(3).getId());
+
+        Book renamed = edit(new Book(10, "Title 0", "Author", true));
+        onEdt(() -> model.booksChanged(Collections.singletonList(new BookChange(1, 10, BookChange.Type.UPDATE, renamed))));
+        assertEquals(10, model.getBookAt(0).getId());
+        assertEquals(1, model.getBookAt(1).getId());
+
+        // Still between its neighbours, so updated in place
+        Book retitled = edit(new Book(100, "Title 100!", "Author", true));
+        onEdt(() -> model.bookUpdated(retitled));
+        assertEquals("Title 100!", model.getValueAt(2, 1));
+
+        onEdt(() -> model.bookInserted(new Book(BOOKS + 1, "Title 1001", "Author", true)));
+        assertEquals(BOOKS + 1, model.getBookAt(4).getId());
+        assertEquals("no full reload expected", 1, counts.get());
+    }
+
+    private List<Book> sorted(BookQuery query) {
+        List<Book> books = new ArrayList<>();
+        for (int id = 1; id <= BOOKS; id++) {
+            if (!deleted.contains(id) && query.matches(current(id))) {
+                books.add(current(id));
+            }
+        }
+        books.sort(query::compare);
+        return books;
+    }
+
+    private Book current(int id) {
+        Book book = edited.get(id);
+        return book != null ? book : book(id);
+    }
+
+    private Book edit(Book book) {
+        edited.put(book.getId(), book);
+        return book;
+    }
+
+    private static Book book(int id) {
+        return new Book(id, "Title " + id, "Author", id % 2 == 0);
+    }
+
+    private static void onEdt(Runnable runnable) throws Exception {
+        SwingUtilities.invokeAndWait(runnable);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws Exception {
+        boolean[] done = new boolean[1];
+        for (int i = 0; i < 500; i++) {
+            SwingUtilities.invokeAndWait(() -> done[0] = condition.getAsBoolean());
+            if (done[0]) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Condition not met");
+    }
+}
@@ -0,0 +1,90 @@
+package org.library.gui;
+
+import junit.framework.TestCase;
+import org.library.metrics.Metrics;
+
+import java.awt.EventQueue;
+import java.awt.SecondaryLoop;
+import java.awt.Toolkit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EdtWatchdogTest extends TestCase {
+    private final EdtWatchdog watchdog = new EdtWatchdog(100, 150, 10);
+
+    @Override
+    protected void setUp() {
+        Metrics.reset();
+        watchdog.start();
+    }
+
+    @Override
+    protected void tearDown() {
+        watchdog.stop();
+    }
+
+    public void testCapturesTheStackOfALongDispatch() throws Exception {
+        EventQueue.invokeAndWait(() -> { });
+        EventQueue.invokeAndWait(() -> block(400));
+        // The stall is recorded once the dispatch returns, just after invokeAndWait wakes up
+        EventQueue.invokeAndWait(() -> { });
+
+        List<EdtWatchdog.Stall> stalls = watchdog.recentStalls();
+        assertEquals(1, stalls.size());
+        EdtWatchdog.Stall stall = stalls.get(0);
+        assertTrue(stall.getMillis() >= 400);
+        assertNotNull(stall.getStack());
+        assertTrue(stall.toString(), stall.toString().contains(getClass().getName() + ".block"));
+        assertEquals(1, Metrics.counters().get("edt.stalls").longValue());
+        assertTrue(Metrics.latencies().get("edt.dispatch").getCount() >= 2);
+    }
+
+    public void testShortStallIsLoggedWithoutAStack() throws Exception {
+        EventQueue.invokeAndWait(() -> block(120));
+        EventQueue.invokeAndWait(() -> { });
+
+        List<EdtWatchdog.Stall> stalls = watchdog.recentStalls();
+        assertEquals(1, stalls.size());
+        assertNull(stalls.get(0).getStack());
+    }
+
+    public void testNestedEventLoopIsNotAStall() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        EventQueue.invokeAndWait(() -> {
+            // What a modal dialog does: keep dispatching events until it closes
+            SecondaryLoop loop = Toolkit.getDefaultToolkit().getSystemEventQueue().createSecondaryLoop();
+            new Thread(() -> {
+                block(300);
+                EventQueue.invokeLater(() -> {
+                    ran.set(true);
+                    loop.exit();
+                });
+            }).start();
+            loop.enter();
+        });
+        EventQueue.invokeAndWait(() -> { });
+
+        assertTrue(ran.get());
+        assertTrue(watchdog.recentStalls().isEmpty());
+    }
+
+    public void testProbeMeasuresQueueLatency() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Metrics.latencies().containsKey("edt.latency") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(Metrics.latencies().containsKey("edt.latency"));
+    }
+
+    private static void block(long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < end) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.library.loan;
+
+import junit.framework.TestCase;
+import org.library.database.ConnectionPool;
+import org.library.database.DatabaseManager;
+import org.library.database.PoolConfig;
+import org.library.metrics.Metrics;
+import org.library.user.Role;
+import org.library.user.Session;
+import org.library.user.User;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class CirculationServiceTest extends TestCase {
+    private static final int THREADS = 32;
+
+    private final CirculationService circulation = new CirculationService();
+
+    @Override
+    protected void setUp() throws SQLException {
+        String url = "jdbc:h2:mem:circulation-" + getName() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        PoolConfig config = new PoolConfig();
+        config.setMaxSize(THREADS);
+        DatabaseManager.setPool(new ConnectionPool(() -> DriverManager.getConnection(url), config));
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE books (id INT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), author VARCHAR(255), available BOOLEAN)");
+            stmt.execute("CREATE TABLE book_changes (version BIGINT AUTO_INCREMENT PRIMARY KEY, book_id INT NOT NULL, "
+                    + "change_type CHAR(1) NOT NULL, changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(50) NOT NULL, "
+                    + "password VARCHAR(255) NOT NULL, role VARCHAR(10) NOT NULL)");
+            stmt.execute("CREATE TABLE loans (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id INT NOT NULL, book_id INT NOT NULL, "
+                    + "borrowed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, due_at TIMESTAMP NOT NULL, returned_at TIMESTAMP NULL)");
+            stmt.execute("CREATE INDEX idx_loans_user_id ON loans (user_id, id)");
+            stmt.execute("CREATE INDEX idx_loans_book_returned ON loans (book_id, returned_at)");
+            stmt.execute("CREATE INDEX idx_loans_returned_due ON loans (returned_at, due_at)");
+            stmt.execute("INSERT INTO books (id, title, author, available) VALUES (1, 'Dune', 'Herbert', true)");
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        DatabaseManager.shutdown();
+    }
+
+    public void testOnlyOneOfManyConcurrentBorrowersWins() throws Exception {
+        List<CirculationResult> results = race(user -> circulation.borrow(user, 1));
+
+        assertEquals(1, occurrences(results, CirculationResult.SUCCESS));
+        assertEquals(THREADS - 1, occurrences(results, CirculationResult.NOT_AVAILABLE));
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM loans WHERE book_id = 1 AND returned_at IS NULL"));
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM books WHERE id = 1 AND available = true"));
+    }
+
+    public void testReturnRequiresOpenLoanAndFreesBook() throws Exception {
+        assertEquals(CirculationResult.SUCCESS, circulation.borrow(7, 1));
+        assertEquals(CirculationResult.NOT_BORROWED, circulation.returnBook(8, 1));
+
+        List<CirculationResult> results = race(user -> circulation.returnBook(7, 1));
+        assertEquals(1, occurrences(results, CirculationResult.SUCCESS));
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM books WHERE id = 1 AND available = true"));
+        assertEquals(CirculationResult.SUCCESS, circulation.borrow(8, 1));
+        // Returned loans stay in the history
+        assertEquals(2, queryInt("SELECT COUNT(*) FROM loans WHERE book_id = 1"));
+    }
+
+    public void testBorrowOfMissingBookIsRejected() throws SQLException {
+        assertEquals(CirculationResult.NOT_AVAILABLE, circulation.borrow(1, 42));
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM loans"));
+    }
+
+    public void testHistoryAndOverdueReports() throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO books (id, title, author, available) VALUES (2, 'Emma', 'Austen', true), (3, 'Ulysses', 'Joyce', true)");
+            stmt.execute("INSERT INTO users (id, username, password, role) VALUES (7, 'alice', 'x', 'USER'), (8, 'bob', 'x', 'USER')");
+        }
+        assertEquals(CirculationResult.SUCCESS, circulation.borrow(7, 1));
+        assertEquals(CirculationResult.SUCCESS, circulation.returnBook(7, 1));
+        assertEquals(CirculationResult.SUCCESS, circulation.borrow(7, 2));
+        assertEquals(CirculationResult.SUCCESS, circulation.borrow(8, 3));
+        assertEquals(CirculationResult.SUCCESS, circulation.borrow(7, 1));
+
+        List<Loan> history = circulation.history(7, Long.MAX_VALUE, 2);
+        assertEquals(2, history.size());
+        assertEquals(1, history.get(0).getBookId());
+        assertEquals("Emma", history.get(1).getBookTitle());
+        List<Loan> older = circulation.history(7, history.get(1).getId(), 2);
+        assertEquals(1, older.size());
+        assertFalse(older.get(0).isOpen());
+        assertEquals(2, circulation.currentLoans(7).size());
+        assertTrue(circulation.overdue(10).isEmpty());
+
+        // Three weeks later every open loan is past its two-week due date
+        CirculationService later = new CirculationService(Clock.offset(Clock.systemUTC(), Duration.ofDays(21)), Duration.ofDays(14));
+        assertEquals(3, later.overdue(10).size());
+        List<OverdueSummary> summary = later.overdueByUser(10);
+        assertEquals(2, summary.size());
+        assertEquals("alice", summary.get(0).getUsername());
+        assertEquals(2, summary.get(0).getOverdueCount());
+        assertEquals(1, summary.get(1).getOverdueCount());
+    }
+
+    public void testSessionTracksItsUsersLoans() throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO books (id, title, author, available) VALUES (2, 'Emma', 'Austen', true)");
+        }
+        assertEquals(CirculationResult.SUCCESS, circulation.borrow(7, 2));
+        Session session = circulation.openSession(new User(7, "alice", "x", Role.USER));
+        assertTrue(session.hasBorrowed(2));
+
+        assertEquals(CirculationResult.SUCCESS, circulation.borrow(session, 1));
+        assertTrue(session.hasBorrowed(1));
+        assertEquals(CirculationResult.SUCCESS, circulation.returnBook(session, 2));
+        assertFalse(session.hasBorrowed(2));
+
+        // Returned from another client: the session finds out on its next attempt
+        assertEquals(CirculationResult.SUCCESS, circulation.returnBook(7, 1));
+        assertEquals(CirculationResult.NOT_BORROWED, circulation.returnBook(session, 1));
+        assertTrue(session.getBorrowedBookIds().isEmpty());
+    }
+
+    public void testWriteBehindBatchesConcurrentEventsWithTheSameOutcome() throws Exception {
+        long batches = count("circulation.batches");
+        try (CirculationQueue queue = new CirculationQueue(2, 64, 20)) {
+            CirculationService writeBehind = new CirculationService(Clock.systemUTC(), Duration.ofDays(14), queue);
+            List<CirculationResult> results = race(user -> writeBehind.borrow(user, 1));
+
+            assertEquals(1, occurrences(results, CirculationResult.SUCCESS));
+            assertEquals(THREADS - 1, occurrences(results, CirculationResult.NOT_AVAILABLE));
+            // Every event for book 1 shares a lane, so they were written in far fewer transactions
+            assertTrue(count("circulation.batches") - batches < THREADS / 2);
+
+            int borrower = queryInt("SELECT user_id FROM loans WHERE book_id = 1 AND returned_at IS NULL");
+            assertEquals(CirculationResult.SUCCESS, writeBehind.returnBook(borrower, 1));
+        }
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM books WHERE id = 1 AND available = true"));
+        assertEquals(0, queryInt("SELECT COUNT(*) FROM loans WHERE returned_at IS NULL"));
+    }
+
+    public void testFailedBatchIsRetriedEventByEvent() throws Exception {
+        try (CirculationQueue queue = new CirculationQueue(1, 64, 200)) {
+            CirculationService writeBehind = new CirculationService(Clock.systemUTC(), Duration.ofDays(14), queue);
+            CompletableFuture<Object> broken = queue.submit(1, conn -> {
+                conn.createStatement().executeUpdate("UPDATE no_such_table SET x = 1");
+                return null;
+            });
+            // Lands in the same batch as the broken event
+            assertEquals(CirculationResult.SUCCESS, writeBehind.borrow(7, 1));
+            try {
+                broken.get(5, TimeUnit.SECONDS);
+                fail("Expected the broken event to fail");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof SQLException);
+            }
+        }
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM loans WHERE book_id = 1 AND user_id = 7"));
+    }
+
+    private interface Attempt {
+        CirculationResult run(int userId) throws SQLException;
+    }
+
+    private List<CirculationResult> race(Attempt attempt) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CirculationResult>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int userId = 100 + i;
+            Callable<CirculationResult> task = () -> {
+                start.await();
+                return attempt.run(userId);
+            };
+            futures.add(executor.submit(task));
+        }
+        start.countDown();
+        List<CirculationResult> results = new ArrayList<>();
+        for (Future<CirculationResult> future : futures) {
+            results.add(future.get());
+        }
+        executor.shutdown();
+        return results;
+    }
+
+    private static int occurrences(List<CirculationResult> results, CirculationResult expected) {
+        int count = 0;
+        for (CirculationResult result : results) {
+            if (result == expected) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long count(String counter) {
+        Long value = Metrics.counters().get(counter);
+        return value == null ? 0 : value;
+    }
+
+    private static int queryInt(String sql) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.library.metrics;
+
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+public class HistogramTest extends TestCase {
+
+    public void testBucketsCoverEveryValueWithinAQuarter() {
+        for (long value = 0; value < 100_000; value++) {
+            assertBucket(value);
+        }
+        for (long value = 100_000; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            assertBucket(value);
+        }
+        assertBucket(Long.MAX_VALUE);
+    }
+
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMean());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertTrue(snapshot.getP50() >= 500_000 && snapshot.getP50() <= 625_000);
+        assertTrue(snapshot.getP99() >= 990_000 && snapshot.getP99() <= 1_000_000);
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getP95());
+    }
+
+    public void testRegistryIsPublishedOverJmx() throws Exception {
+        Metrics.record("test.latency", 42);
+        Metrics.increment("test.counter");
+        Metrics.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.library:type=Metrics");
+        TabularData latencies = (TabularData) server.getAttribute(name, "Latencies");
+        assertNotNull(latencies.get(new Object[]{"test.latency"}));
+        TabularData counters = (TabularData) server.getAttribute(name, "Counters");
+        assertNotNull(counters.get(new Object[]{"test.counter"}));
+    }
+
+    private static void assertBucket(long value) {
+        int bucket = Histogram.bucket(value);
+        long upper = Histogram.upperBound(bucket);
+        assertTrue(value + " above " + upper, value <= upper);
+        assertTrue(value + " far below " + upper, upper - value <= value / 4);
+        if (bucket > 0) {
+            assertTrue(value + " belongs lower", Histogram.upperBound(bucket - 1) < value);
+        }
+    }
+}
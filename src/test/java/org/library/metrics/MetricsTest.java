@@ -0,0 +1,33 @@
+package org.library.metrics;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class MetricsTest extends TestCase {
+
+    public void testErrorsAreCountedAndKept() {
+        // Keeps the expected failures out of the test output
+        Logger log = Logger.getLogger(Metrics.class.getName());
+        boolean useParent = log.getUseParentHandlers();
+        log.setUseParentHandlers(false);
+        try {
+            Long before = Metrics.counters().get("errors.test");
+            IOException failure = new IOException("disk full");
+            for (int i = 0; i < 60; i++) {
+                Metrics.error("errors.test", failure);
+            }
+            assertEquals((before == null ? 0 : before) + 60, (long) Metrics.counters().get("errors.test"));
+
+            List<Metrics.Failure> recent = Metrics.recentErrors();
+            assertEquals(50, recent.size());
+            Metrics.Failure last = recent.get(recent.size() - 1);
+            assertEquals("errors.test", last.getName());
+            assertSame(failure, last.getError());
+        } finally {
+            log.setUseParentHandlers(useParent);
+        }
+    }
+}
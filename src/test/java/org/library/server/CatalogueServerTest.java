@@ -0,0 +1,165 @@
+package org.library.server;
+
+import junit.framework.TestCase;
+import org.library.book.BookChangeFeed;
+import org.library.book.BookRepository;
+import org.library.database.ConnectionPool;
+import org.library.database.DatabaseManager;
+import org.library.database.EmbeddedStorage;
+import org.library.database.MigrationRunner;
+import org.library.database.PoolConfig;
+import org.library.loan.CirculationService;
+import org.library.user.PasswordHasher;
+import org.library.user.Role;
+import org.library.user.UserService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Base64;
+
+public class CatalogueServerTest extends TestCase {
+    private BookRepository books;
+    private BookChangeFeed changes;
+    private CatalogueServer server;
+    private int status;
+
+    @Override
+    protected void setUp() throws Exception {
+        String url = "jdbc:h2:mem:server-" + getName() + ";MODE=MySQL;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1";
+        DatabaseManager.setPool(new ConnectionPool(() -> DriverManager.getConnection(url), new PoolConfig()));
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            new MigrationRunner(new EmbeddedStorage().getMigrationLocation()).migrate(conn);
+            stmt.execute("INSERT INTO books (title, author, available) VALUES ('Dune', 'Herbert', true), "
+                    + "('Dune Messiah', 'Herbert', true), ('Emma', 'Austen', true), ('Say \"Hi\"', 'Quoted', false)");
+        }
+        UserService users = new UserService(new PasswordHasher(1000), 10, 60_000);
+        users.register("alice", "s3cret", Role.USER);
+        books = new BookRepository(100, 60_000, false);
+        changes = new BookChangeFeed(books, 0, 60_000);
+        server = new CatalogueServer(new InetSocketAddress("127.0.0.1", 0), books, changes, new CirculationService(), users);
+        server.start();
+        // The first poll fixes the feed's starting version
+        changes.poll();
+    }
+
+    @Override
+    protected void tearDown() {
+        server.close();
+        changes.close();
+        DatabaseManager.shutdown();
+    }
+
+    public void testBrowsesAndSearchesTheCatalogue() throws IOException {
+        assertEquals("{\"status\":\"ok\"}", get("/api/health"));
+
+        String first = get("/api/books?limit=2");
+        assertEquals(200, status);
+        assertEquals("{\"books\":[{\"id\":1,\"title\":\"Dune\",\"author\":\"Herbert\",\"available\":true},"
+                + "{\"id\":2,\"title\":\"Dune Messiah\",\"author\":\"Herbert\",\"available\":true}],\"next\":\"2\"}", first);
+        assertEquals("{\"books\":[{\"id\":3,\"title\":\"Emma\",\"author\":\"Austen\",\"available\":true},"
+                + "{\"id\":4,\"title\":\"Say \\\"Hi\\\"\",\"author\":\"Quoted\",\"available\":false}],\"next\":\"4\"}",
+                get("/api/books?limit=2&after=2"));
+        assertEquals("{\"books\":[],\"next\":null}", get("/api/books?limit=2&after=4"));
+
+        assertEquals("{\"count\":2}", get("/api/books/count?q=dune"));
+        assertTrue(get("/api/books?q=herb&sort=title&desc=true").startsWith("{\"books\":[{\"id\":2,"));
+        assertEquals("{\"count\":3}", get("/api/books/count?availability=available"));
+        assertEquals("{\"id\":3,\"title\":\"Emma\",\"author\":\"Austen\",\"available\":true}", get("/api/books/3"));
+
+        get("/api/books/99");
+        assertEquals(404, status);
+        get("/api/books?sort=publisher");
+        assertEquals(400, status);
+        get("/api/books/abc");
+        assertEquals(400, status);
+        get("/api/books?limit=0");
+        assertEquals(400, status);
+        assertEquals("{\"error\":\"limit must be at least 1\"}", get("/api/books?limit=-1"));
+        assertEquals(400, status);
+        assertTrue(get("/api/books?limit=1").endsWith("\"next\":\"1\"}"));
+    }
+
+    public void testSortedPagesContinueAfterTheLastBookIsDeleted() throws Exception {
+        String first = get("/api/books?sort=title&limit=2");
+        assertTrue(first, first.endsWith("\"next\":\"2:Dune Messiah\"}"));
+
+        books.delete(2);
+        String next = get("/api/books?sort=title&limit=2&after=" + URLEncoder.encode("2:Dune Messiah", "UTF-8"));
+        assertTrue(next, next.startsWith("{\"books\":[{\"id\":3,\"title\":\"Emma\""));
+        assertTrue(next, next.contains("{\"id\":4,"));
+
+        // A bare id is looked up, and must still exist
+        assertTrue(get("/api/books?sort=title&limit=2&after=1").startsWith("{\"books\":[{\"id\":3,"));
+        get("/api/books?sort=title&limit=2&after=2");
+        assertEquals(400, status);
+    }
+
+    public void testBorrowAndReturnNeedALogin() throws IOException {
+        post("/api/books/1/borrow", null);
+        assertEquals(401, status);
+        post("/api/books/1/borrow", "alice:wrong");
+        assertEquals(401, status);
+        request("POST", "/api/books/1/borrow", "Basic not*base64");
+        assertEquals(401, status);
+
+        assertEquals("{\"result\":\"SUCCESS\"}", post("/api/books/1/borrow", "alice:s3cret"));
+        assertEquals("{\"result\":\"NOT_AVAILABLE\"}", post("/api/books/1/borrow", "alice:s3cret"));
+        assertEquals(409, status);
+        assertTrue(request("GET", "/api/loans", basic("alice:s3cret")).contains("\"bookId\":1,\"title\":\"Dune\""));
+
+        assertEquals("{\"result\":\"SUCCESS\"}", post("/api/books/1/return", "alice:s3cret"));
+        assertEquals("{\"result\":\"NOT_BORROWED\"}", post("/api/books/1/return", "alice:s3cret"));
+        assertEquals(409, status);
+
+        request("GET", "/api/books/1/borrow", basic("alice:s3cret"));
+        assertEquals(405, status);
+    }
+
+    public void testWritesReachTheCachedCatalogue() throws Exception {
+        assertTrue(get("/api/books/1").endsWith("\"available\":true}"));
+        post("/api/books/1/borrow", "alice:s3cret");
+        // The borrow polls the change feed, which refreshes the repository cache
+        changes.poll();
+        assertTrue(get("/api/books/1").endsWith("\"available\":false}"));
+    }
+
+    private String get(String path) throws IOException {
+        return request("GET", path, null);
+    }
+
+    private String post(String path, String credentials) throws IOException {
+        return request("POST", path, basic(credentials));
+    }
+
+    private static String basic(String credentials) {
+        return credentials == null ? null
+                : "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String request(String method, String path, String authorization) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        conn.setRequestMethod(method);
+        if (authorization != null) {
+            conn.setRequestProperty("Authorization", authorization);
+        }
+        status = conn.getResponseCode();
+        try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                body.write(buffer, 0, n);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.library.user;
+
+import junit.framework.TestCase;
+import org.library.database.ConnectionPool;
+import org.library.database.DatabaseManager;
+import org.library.database.PoolConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class UserServiceTest extends TestCase {
+    private final PasswordHasher hasher = new PasswordHasher(1000);
+    private final UserService users = new UserService(hasher, 10, 60_000);
+
+    @Override
+    protected void setUp() throws SQLException {
+        String url = "jdbc:h2:mem:users-" + getName() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        DatabaseManager.setPool(new ConnectionPool(() -> DriverManager.getConnection(url), new PoolConfig()));
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(50) NOT NULL UNIQUE, "
+                    + "password VARCHAR(255) NOT NULL, role VARCHAR(10) NOT NULL)");
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        DatabaseManager.shutdown();
+    }
+
+    public void testRegisteredUserCanLogInWithHashedPassword() throws SQLException {
+        users.register("alice", "s3cret", Role.ADMIN);
+
+        String stored = storedPassword("alice");
+        assertFalse(stored.contains("s3cret"));
+        assertTrue(stored.startsWith("pbkdf2-sha256$1000$"));
+
+        User user = users.authenticate("alice", "s3cret");
+        assertNotNull(user);
+        assertEquals(Role.ADMIN, user.getRole());
+        // Served from the verification cache the second time
+        assertNotNull(users.authenticate("alice", "s3cret"));
+        assertNull(users.authenticate("alice", "wrong"));
+        assertNull(users.authenticate("bob", "s3cret"));
+    }
+
+    public void testRegisteringATakenUsernameFails() throws SQLException {
+        assertTrue(users.register("erin", "first", Role.USER));
+        assertFalse(users.register("erin", "second", Role.ADMIN));
+        assertEquals(Role.USER, users.authenticate("erin", "first").getRole());
+        assertNull(users.authenticate("erin", "second"));
+    }
+
+    public void testPlaintextPasswordIsUpgradedOnLogin() throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO users (username, password, role) VALUES ('carol', 'legacy', 'USER')");
+        }
+
+        assertNull(users.authenticate("carol", "legac"));
+        assertNotNull(users.authenticate("carol", "legacy"));
+        assertTrue(hasher.verify("legacy", storedPassword("carol")));
+        assertFalse(hasher.needsRehash(storedPassword("carol")));
+    }
+
+    public void testCachedLoginIsRevokedByPasswordChange() throws SQLException {
+        users.register("dave", "old", Role.USER);
+        assertNotNull(users.authenticate("dave", "old"));
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE users SET password = ? WHERE username = 'dave'")) {
+            stmt.setString(1, hasher.hash("new"));
+            stmt.executeUpdate();
+        }
+
+        assertNull(users.authenticate("dave", "old"));
+        assertNotNull(users.authenticate("dave", "new"));
+    }
+
+    private static String storedPassword(String username) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT password FROM users WHERE username = ?")) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+-- A table and a row; the statement spans lines.
+CREATE TABLE books (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    title VARCHAR(255) NOT NULL
+);
+INSERT INTO books (title) VALUES ('Dune');